@@ -0,0 +1,99 @@
+package at.yawk.patchtools.editor;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * Inputs shared by the benchmarks: bundled resources and generated classes.
+ *
+ * @author yawkat
+ */
+class BenchmarkInputs {
+    private BenchmarkInputs() {}
+
+    static String resourceText(String name) {
+        return new String(resource(name), StandardCharsets.UTF_8);
+    }
+
+    static byte[] resource(String name) {
+        try (InputStream in = BenchmarkInputs.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Missing resource " + name);
+            }
+            return ByteStreams.toByteArray(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static ClassNode testClass() {
+        ClassNode node = new ClassNode(Opcodes.ASM5);
+        new ClassReader(resource("TestClass.class")).accept(node, 0);
+        return node;
+    }
+
+    /**
+     * Repeat <code>text</code> until the result is at least <code>length</code> characters long.
+     */
+    static String repeat(String text, int length) {
+        StringBuilder builder = new StringBuilder(length + text.length());
+        while (builder.length() < length) {
+            builder.append(text).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Generate a class with the given number of methods. Each method has roughly <code>instructions</code>
+     * instructions of the kinds real code has: field access, constants, calls, arithmetic and branches.
+     *
+     * @param name internal class name
+     */
+    static ClassNode generateClass(String name, int methods, int instructions) {
+        ClassNode node = new ClassNode(Opcodes.ASM5);
+        node.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+
+        MethodVisitor init = node.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(1, 1);
+        init.visitEnd();
+
+        for (int i = 0; i < methods; i++) {
+            MethodVisitor mv = node.visitMethod(Opcodes.ACC_PUBLIC, "method" + i, "(I)I", null, null);
+            mv.visitCode();
+            for (int j = 0; j < instructions / 13; j++) {
+                mv.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+                mv.visitLdcInsn(" value " + i + " " + j + " ");
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "trim", "()Ljava/lang/String;", false);
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V",
+                                   false);
+                mv.visitVarInsn(Opcodes.ILOAD, 1);
+                mv.visitInsn(Opcodes.ICONST_0 + j % 6);
+                mv.visitInsn(Opcodes.IADD);
+                mv.visitVarInsn(Opcodes.ISTORE, 1);
+                Label skip = new Label();
+                mv.visitVarInsn(Opcodes.ILOAD, 1);
+                mv.visitJumpInsn(Opcodes.IFLE, skip);
+                mv.visitIincInsn(1, -1);
+                mv.visitLabel(skip);
+            }
+            mv.visitVarInsn(Opcodes.ILOAD, 1);
+            mv.visitInsn(Opcodes.IRETURN);
+            mv.visitMaxs(2, 2);
+            mv.visitEnd();
+        }
+        node.visitEnd();
+        return node;
+    }
+}
@@ -0,0 +1,28 @@
+package at.yawk.patchtools.editor;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, which reports allocation rates next to throughput. Results are also
+ * written to <code>benchmark-results.json</code> to compare against a baseline.
+ *
+ * <pre>java -jar benchmarks.jar [benchmark regex]</pre>
+ *
+ * @author yawkat
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("benchmark-results.json")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,52 @@
+package at.yawk.patchtools.editor;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full-text highlighting of java and patch code, as done when a view is replaced.
+ *
+ * @author yawkat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HighlightBenchmark {
+    private static final int LARGE_LENGTH = 4 << 20;
+
+    @Param({ "JAVA", "PATCH" })
+    public String language;
+    /**
+     * <code>small</code> is a single class or patch, <code>large</code> repeats it to a few MB.
+     */
+    @Param({ "small", "large" })
+    public String size;
+
+    private KeywordHighlighter highlighter;
+    private String text;
+
+    @Setup
+    public void setup() {
+        String sample;
+        if (language.equals("JAVA")) {
+            highlighter = KeywordHighlighter.JAVA;
+            byte[] bytes = Patching.toBytes(BenchmarkInputs.generateClass("gen/Highlight", 16, 100));
+            sample = new CodeRenderer(1 << 20).decompile(bytes, EvaluationScheduler.Cancellation.NEVER);
+        } else {
+            highlighter = KeywordHighlighter.PATCH;
+            sample = BenchmarkInputs.resourceText("test.patch");
+        }
+        text = size.equals("small") ? sample : BenchmarkInputs.repeat(sample, LARGE_LENGTH);
+        // load the automaton outside of the measurement
+        highlighter.findAndSortHighlights("");
+    }
+
+    @Benchmark
+    public Object highlight() {
+        return highlighter.findAndSortHighlights(text);
+    }
+}
@@ -0,0 +1,44 @@
+package at.yawk.patchtools.editor;
+
+import java.util.concurrent.TimeUnit;
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Bytecode markup of a class, without and with the per-method cache of {@link CodeRenderer}.
+ *
+ * @author yawkat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MarkupBenchmark {
+    @Param({ "16", "512" })
+    public int methods;
+
+    private ClassNode node;
+    private CodeRenderer renderer;
+
+    @Setup
+    public void setup() {
+        node = BenchmarkInputs.generateClass("gen/Markup", methods, 100);
+        renderer = new CodeRenderer(64 << 20);
+        renderer.markup(node);
+    }
+
+    @Benchmark
+    public String write() {
+        LineSink sink = new LineSink("  ");
+        new BytecodeMarkup().write(node, sink);
+        return sink.toString();
+    }
+
+    @Benchmark
+    public String writeCached() {
+        return renderer.markup(node);
+    }
+}
@@ -0,0 +1,46 @@
+package at.yawk.patchtools.editor;
+
+import java.util.concurrent.TimeUnit;
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full patch application, as done by <code>MainController.getPatched</code> when the patch cannot be applied
+ * incrementally.
+ *
+ * @author yawkat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PatchBenchmark {
+    /**
+     * <code>test</code> applies the bundled warm-up patch to {@link TestClass}, <code>large</code> adds a field to a
+     * generated class with many methods.
+     */
+    @Param({ "test", "large" })
+    public String input;
+
+    private ClassNode node;
+    private String patch;
+
+    @Setup
+    public void setup() {
+        if (input.equals("test")) {
+            node = BenchmarkInputs.testClass();
+            patch = BenchmarkInputs.resourceText("warmup.patch");
+        } else {
+            node = BenchmarkInputs.generateClass("gen/Patch", 512, 100);
+            patch = "public class gen.Patch {\n  add public static boolean flag;\n}\n";
+        }
+    }
+
+    @Benchmark
+    public ClassNode patch() {
+        return Patching.patchClass(node, patch);
+    }
+}
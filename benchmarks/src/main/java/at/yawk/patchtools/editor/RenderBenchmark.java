@@ -0,0 +1,63 @@
+package at.yawk.patchtools.editor;
+
+import com.google.common.hash.HashCode;
+import java.util.concurrent.TimeUnit;
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The work of <code>MainController.asyncComputeCode</code> on a whole-class cache miss: serialize and hash the class,
+ * then render bytecode and java views. The stages run one after the other here so the numbers are per thread.
+ *
+ * @author yawkat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RenderBenchmark {
+    /**
+     * Below and above the threshold for per-method decompilation.
+     */
+    @Param({ "16", "64" })
+    public int methods;
+
+    private ClassNode node;
+    private CodeRenderer renderer;
+
+    @Setup
+    public void setup() {
+        node = BenchmarkInputs.generateClass("gen/Render", methods, 100);
+        renderer = new CodeRenderer(64 << 20);
+        renderer.markup(node);
+        renderer.decompile(Patching.toBytes(node), EvaluationScheduler.Cancellation.NEVER);
+    }
+
+    /**
+     * Render with empty per-method caches, like the first render of a class.
+     */
+    @Benchmark
+    public void renderCold(Blackhole blackhole) {
+        render(new CodeRenderer(64 << 20), blackhole);
+    }
+
+    /**
+     * Render with per-method caches that already hold every method, like an edit that did not change any method.
+     */
+    @Benchmark
+    public void renderWarm(Blackhole blackhole) {
+        render(renderer, blackhole);
+    }
+
+    private void render(CodeRenderer renderer, Blackhole blackhole) {
+        byte[] bytes = Patching.toBytes(node);
+        HashCode hash = ComputedCodeCache.hash(bytes);
+        blackhole.consume(hash);
+        blackhole.consume(renderer.markup(node));
+        blackhole.consume(renderer.decompile(bytes, EvaluationScheduler.Cancellation.NEVER));
+    }
+}
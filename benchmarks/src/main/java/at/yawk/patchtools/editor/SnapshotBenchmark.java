@@ -0,0 +1,45 @@
+package at.yawk.patchtools.editor;
+
+import java.util.concurrent.TimeUnit;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-evaluation setup cost: getting a fresh, mutable tree of the loaded class by cloning a tree, as evaluations used
+ * to, or from a {@link ClassSnapshot}.
+ *
+ * @author yawkat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SnapshotBenchmark {
+    @Param({ "16", "512", "4096" })
+    public int methods;
+
+    private ClassNode tree;
+    private ClassSnapshot snapshot;
+
+    @Setup
+    public void setup() {
+        tree = BenchmarkInputs.generateClass("gen/Snapshot", methods, 100);
+        snapshot = new ClassSnapshot(Patching.toBytes(tree));
+    }
+
+    @Benchmark
+    public ClassNode cloneTree() {
+        ClassNode node = new ClassNode(Opcodes.ASM5);
+        tree.accept(node);
+        return node;
+    }
+
+    @Benchmark
+    public ClassNode fromSnapshot() {
+        return snapshot.newNode();
+    }
+}
@@ -0,0 +1,54 @@
+package at.yawk.patchtools.editor;
+
+/**
+ * Debounce delay for patch evaluation that follows an exponential moving average of recent evaluation times, clamped
+ * to a configurable floor and ceiling. Small classes update almost live, heavy ones back off automatically.
+ *
+ * @author yawkat
+ */
+class AdaptiveDebounce {
+    static final long DEFAULT_FLOOR = 100;
+    static final long DEFAULT_CEILING = 5000;
+
+    /**
+     * Weight of the newest sample in the moving average.
+     */
+    private static final double SMOOTHING = 0.3;
+
+    private long floor = DEFAULT_FLOOR;
+    private long ceiling = DEFAULT_CEILING;
+    /**
+     * Moving average in milliseconds, <code>-1</code> if there are no samples yet.
+     */
+    private double average = -1;
+
+    /**
+     * @param floor   minimum delay in milliseconds.
+     * @param ceiling maximum delay in milliseconds, also used until the first evaluation time is known.
+     */
+    synchronized void setLimits(long floor, long ceiling) {
+        if (floor > ceiling) {
+            throw new IllegalArgumentException("Debounce floor " + floor + " is above ceiling " + ceiling);
+        }
+        this.floor = floor;
+        this.ceiling = ceiling;
+    }
+
+    /**
+     * Forget previous evaluation times, for example because a different class was loaded.
+     */
+    synchronized void reset() {
+        average = -1;
+    }
+
+    synchronized void record(long millis) {
+        average = average < 0 ? millis : SMOOTHING * millis + (1 - SMOOTHING) * average;
+    }
+
+    synchronized long getDelay() {
+        if (average < 0) {
+            return ceiling;
+        }
+        return Math.max(floor, Math.min(ceiling, (long) average));
+    }
+}
@@ -0,0 +1,141 @@
+package at.yawk.patchtools.editor;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import uk.co.thinkofdeath.patchtools.wrappers.ClassPathWrapper;
+import uk.co.thinkofdeath.patchtools.wrappers.ClassSet;
+
+/**
+ * Headless entry point that applies patches to a whole jar:
+ *
+ * <pre>java -cp patchtools-editor.jar at.yawk.patchtools.editor.BatchPatcher in.jar out.jar a.patch [b.patch...]</pre>
+ *
+ * Classes are parsed and written in parallel on the fork-join pool, the patches are applied in the given order.
+ * Classes a patch changed are written with recomputed frames, every other entry is copied through unchanged.
+ * <p>
+ * Patching itself is not parallel: each patch is one {@link Patching#apply} over the whole class set, because
+ * patchtools binds <code>~</code> names across all classes of a patch, so its blocks can not be matched independently.
+ * Only parsing and writing scale with the number of cores.
+ *
+ * @author yawkat
+ */
+public class BatchPatcher {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: BatchPatcher <input jar> <output jar> <patch> [patch...]");
+            System.exit(1);
+        }
+        List<Path> patches = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            patches.add(Paths.get(args[i]));
+        }
+        patch(Paths.get(args[0]), Paths.get(args[1]), patches);
+    }
+
+    static void patch(Path input, Path output, List<Path> patchFiles) throws IOException {
+        Stopwatch total = Stopwatch.createStarted();
+        try (ZipFile jar = new ZipFile(input.toFile())) {
+            List<? extends ZipEntry> entries = Collections.list(jar.entries());
+
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            Map<String, ClassNode> classes = readClasses(jar, entries);
+            Map<String, HashCode> fingerprints = fingerprints(classes);
+            report("Parsed", classes.size(), stopwatch);
+
+            ClassSet classSet = new ClassSet(new ClassPathWrapper());
+            classes.values().forEach(classSet::add);
+            for (Path patchFile : patchFiles) {
+                String patch = new String(Files.readAllBytes(patchFile), StandardCharsets.UTF_8);
+                stopwatch = Stopwatch.createStarted();
+                Patching.apply(classSet, patch);
+                System.out.printf("Applied %s in %d ms%n", patchFile, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+            }
+
+            stopwatch = Stopwatch.createStarted();
+            Map<String, ClassNode> patched = new HashMap<>();
+            for (ClassNode node : classes.values()) {
+                patched.put(node.name, classSet.getClassWrapper(node.name).getNode());
+            }
+            Map<String, byte[]> changed = new ConcurrentHashMap<>();
+            classes.entrySet().parallelStream().forEach(entry -> {
+                ClassNode node = patched.get(entry.getValue().name);
+                if (!ComputedCodeCache.hash(Patching.toBytes(node)).equals(fingerprints.get(entry.getKey()))) {
+                    ClassWriter writer = new HierarchyClassWriter(patched::get);
+                    node.accept(writer);
+                    changed.put(entry.getKey(), writer.toByteArray());
+                }
+            });
+
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(output))) {
+                for (ZipEntry entry : entries) {
+                    byte[] bytes = changed.get(entry.getName());
+                    if (bytes != null) {
+                        out.putNextEntry(new ZipEntry(entry.getName()));
+                        out.write(bytes);
+                    } else {
+                        ZipEntry copy = new ZipEntry(entry);
+                        copy.setCompressedSize(-1);
+                        out.putNextEntry(copy);
+                        try (InputStream in = jar.getInputStream(entry)) {
+                            ByteStreams.copy(in, out);
+                        }
+                    }
+                    out.closeEntry();
+                }
+            }
+            report("Wrote " + changed.size() + " patched of", classes.size(), stopwatch);
+        }
+        System.out.printf("Done in %d ms%n", total.elapsed(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Read and parse all classes of a jar in parallel.
+     *
+     * @return class nodes by entry name.
+     */
+    static Map<String, ClassNode> readClasses(ZipFile jar, List<? extends ZipEntry> entries) {
+        Map<String, ClassNode> classes = new ConcurrentHashMap<>();
+        entries.parallelStream()
+                .filter(entry -> !entry.isDirectory() && entry.getName().endsWith(".class"))
+                .forEach(entry -> {
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        ClassNode node = new ClassNode(Opcodes.ASM5);
+                        new ClassReader(in).accept(node, 0);
+                        classes.put(entry.getName(), node);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        return classes;
+    }
+
+    private static Map<String, HashCode> fingerprints(Map<String, ClassNode> classes) {
+        Map<String, HashCode> fingerprints = new ConcurrentHashMap<>();
+        classes.entrySet().parallelStream().forEach(entry -> fingerprints.put(
+                entry.getKey(), ComputedCodeCache.hash(Patching.toBytes(entry.getValue()))));
+        return fingerprints;
+    }
+
+    private static void report(String action, int classes, Stopwatch stopwatch) {
+        long millis = Math.max(1, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        System.out.printf("%s %d classes in %d ms (%d classes/s)%n", action, classes, millis, classes * 1000L / millis);
+    }
+}
@@ -0,0 +1,207 @@
+package at.yawk.patchtools.editor;
+
+import com.google.common.hash.HashCode;
+import java.util.*;
+import java.util.function.Function;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Structural diff between an original class and a patched version of it, written in patch syntax: added and removed
+ * members are prefixed with <code>add</code> and <code>remove</code>, instructions with <code>+</code> and
+ * <code>-</code>, and unchanged runs of instructions are collapsed to <code>.any</code>.
+ *
+ * Members are matched by name and descriptor and compared by fingerprint, so only methods that actually changed are
+ * printed and diffed instruction by instruction. Fingerprints of the original class are computed once.
+ *
+ * @author yawkat
+ */
+class BytecodeDiff {
+    /**
+     * Unchanged instruction lines shown around each change.
+     */
+    private static final int CONTEXT = 2;
+
+    private final ClassSnapshot original;
+    private final Function<MethodNode, String[]> instructions;
+    /**
+     * Parsed original class. Only used under the lock of this object, since visiting it resets its labels.
+     */
+    private final ClassNode originalNode;
+    private final Map<String, MethodNode> originalMethods = new LinkedHashMap<>();
+    private final Map<String, HashCode> originalFingerprints = new HashMap<>();
+    private final Map<String, FieldNode> originalFields = new LinkedHashMap<>();
+
+    /**
+     * @param instructions renders the instruction lines of a method
+     */
+    BytecodeDiff(ClassSnapshot original, Function<MethodNode, String[]> instructions) {
+        this.original = original;
+        this.instructions = instructions;
+        this.originalNode = original.newNode();
+        for (MethodNode method : originalNode.methods) {
+            originalMethods.put(key(method), method);
+            originalFingerprints.put(key(method), MethodFingerprint.of(method));
+        }
+        for (FieldNode field : originalNode.fields) {
+            originalFields.put(field.name, field);
+        }
+    }
+
+    ClassSnapshot getOriginal() {
+        return original;
+    }
+
+    private static String key(MethodNode method) {
+        return method.name + method.desc;
+    }
+
+    private static String fieldFingerprint(FieldNode field) {
+        return field.access + " " + field.desc + " " + field.signature + " " + field.value;
+    }
+
+    /**
+     * Write the differences between the original class and <code>patched</code>, which must not be visited
+     * concurrently.
+     */
+    synchronized String diff(ClassNode patched) {
+        LineSink out = new LineSink("    ");
+        BytecodeMarkup.writeClassHeader(patched, out);
+        out.append(" {").newLine();
+        out.indent();
+
+        LineSink originalHeader = new LineSink("");
+        BytecodeMarkup.writeClassHeader(originalNode, originalHeader);
+        LineSink patchedHeader = new LineSink("");
+        BytecodeMarkup.writeClassHeader(patched, patchedHeader);
+        if (!originalHeader.toString().equals(patchedHeader.toString())) {
+            out.append("// was: ").append(originalHeader.toString()).newLine();
+        }
+
+        boolean firstMember = true;
+        int unchangedFields = 0;
+        Set<String> fieldNames = new HashSet<>();
+        for (FieldNode field : patched.fields) {
+            fieldNames.add(field.name);
+            FieldNode before = originalFields.get(field.name);
+            if (before != null && fieldFingerprint(before).equals(fieldFingerprint(field))) {
+                unchangedFields++;
+                continue;
+            }
+            if (before != null) {
+                out.append("remove ");
+                BytecodeMarkup.writeField(before, out);
+            }
+            out.append("add ");
+            BytecodeMarkup.writeField(field, out);
+            firstMember = false;
+        }
+        for (FieldNode field : originalFields.values()) {
+            if (!fieldNames.contains(field.name)) {
+                out.append("remove ");
+                BytecodeMarkup.writeField(field, out);
+                firstMember = false;
+            }
+        }
+
+        int unchangedMethods = 0;
+        Set<String> methodKeys = new HashSet<>();
+        for (MethodNode method : patched.methods) {
+            String key = key(method);
+            methodKeys.add(key);
+            HashCode before = originalFingerprints.get(key);
+            if (before == null) {
+                if (!firstMember) { out.newLine(); }
+                firstMember = false;
+                writeWhole("add ", '+', method, out);
+            } else if (!before.equals(MethodFingerprint.of(method))) {
+                if (!firstMember) { out.newLine(); }
+                firstMember = false;
+                writeChanged(originalMethods.get(key), method, out);
+            } else {
+                unchangedMethods++;
+            }
+        }
+        for (MethodNode method : originalMethods.values()) {
+            if (!methodKeys.contains(key(method))) {
+                if (!firstMember) { out.newLine(); }
+                firstMember = false;
+                writeWhole("remove ", '-', method, out);
+            }
+        }
+
+        out.unindent();
+        out.append('}').newLine();
+        out.append("// ").append(String.valueOf(unchangedMethods)).append(" unchanged methods, ")
+                .append(String.valueOf(unchangedFields)).append(" unchanged fields").newLine();
+        return out.toString();
+    }
+
+    private void writeWhole(String action, char prefix, MethodNode method, LineSink out) {
+        out.append(action);
+        BytecodeMarkup.writeMethodHeader(method, out);
+        out.append(" {").newLine();
+        out.indent();
+        for (String line : instructions.apply(method)) {
+            out.append(prefix).append(line.substring(1)).newLine();
+        }
+        out.unindent();
+        out.append('}').newLine();
+    }
+
+    private void writeChanged(MethodNode before, MethodNode after, LineSink out) {
+        if (before.access != after.access) {
+            out.append("// was: ");
+            BytecodeMarkup.writeMethodHeader(before, out);
+            out.newLine();
+        }
+        BytecodeMarkup.writeMethodHeader(after, out);
+        out.append(" {").newLine();
+        out.indent();
+
+        List<String> from = Arrays.asList(instructions.apply(before));
+        List<String> to = Arrays.asList(instructions.apply(after));
+        List<LineDiff.Hunk> hunks = LineDiff.diff(from, to);
+        if (hunks.isEmpty()) {
+            // same instructions, something else like the try-catch blocks or debug info changed
+            out.append("// instructions unchanged").newLine();
+        }
+        // end of the last written line of the old instructions
+        int written = 0;
+        for (int h = 0; h < hunks.size(); h++) {
+            LineDiff.Hunk hunk = hunks.get(h);
+            int contextStart = Math.max(written, hunk.fromStart - CONTEXT);
+            if (contextStart > written) {
+                out.append(".any").newLine();
+            }
+            for (int i = contextStart; i < hunk.fromStart; i++) {
+                out.append(from.get(i)).newLine();
+            }
+            for (int i = hunk.fromStart; i < hunk.fromEnd; i++) {
+                String line = from.get(i);
+                out.append('-').append(line.substring(1)).newLine();
+            }
+            for (int i = hunk.toStart; i < hunk.toEnd; i++) {
+                String line = to.get(i);
+                out.append('+').append(line.substring(1)).newLine();
+            }
+            written = hunk.fromEnd;
+            int contextEnd = Math.min(from.size(), written + CONTEXT);
+            // stop at the next hunk, it writes its own context
+            if (h + 1 < hunks.size()) {
+                contextEnd = Math.min(contextEnd, hunks.get(h + 1).fromStart);
+            }
+            for (int i = written; i < contextEnd; i++) {
+                out.append(from.get(i)).newLine();
+            }
+            written = contextEnd;
+        }
+        if (!hunks.isEmpty() && written < from.size()) {
+            out.append(".any").newLine();
+        }
+
+        out.unindent();
+        out.append('}').newLine();
+    }
+}
@@ -1,158 +1,225 @@
 package at.yawk.patchtools.editor;
 
-import com.google.common.collect.ImmutableMap;
-import com.strobel.decompiler.ITextOutput;
-import java.util.Arrays;
+import com.google.common.cache.Cache;
+import com.google.common.hash.HashCode;
 import java.util.ListIterator;
 import java.util.Map;
-import java.util.function.Consumer;
 import org.objectweb.asm.*;
 import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
 import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.util.Printer;
-import uk.co.thinkofdeath.patchtools.instruction.Instruction;
 import uk.co.thinkofdeath.patchtools.instruction.Instructions;
 
 /**
+ * Writes a class in patch syntax. Not thread-safe, use one instance per class being written.
+ *
  * @author yawkat
  */
 public class BytecodeMarkup {
-    private static final Map<Integer, String> ACCESS =
-            ImmutableMap.<Integer, String>builder()
-                    .put(Opcodes.ACC_PRIVATE, "private")
-                    .put(Opcodes.ACC_PUBLIC, "public")
-                    .put(Opcodes.ACC_PROTECTED, "protected")
-                    .put(Opcodes.ACC_STATIC, "static")
-                    .put(Opcodes.ACC_SYNCHRONIZED, "synchronized")
-                    .put(Opcodes.ACC_FINAL, "final")
-                    .build();
-
-    private static void writeModifiers(ITextOutput ito, int modifiers, int... exclude) {
-        Arrays.sort(exclude);
-        ACCESS.forEach((k, v) -> {
-            if (Arrays.binarySearch(exclude, k) == -1 && (modifiers & k) != 0) {
-                ito.write(v);
-                ito.write(' ');
+    private static final int[] ACCESS_FLAGS = {
+            Opcodes.ACC_PRIVATE,
+            Opcodes.ACC_PUBLIC,
+            Opcodes.ACC_PROTECTED,
+            Opcodes.ACC_STATIC,
+            Opcodes.ACC_SYNCHRONIZED,
+            Opcodes.ACC_FINAL,
+    };
+    private static final String[] ACCESS_NAMES = {
+            "private",
+            "public",
+            "protected",
+            "static",
+            "synchronized",
+            "final",
+    };
+    private static final String OBJECT = "java/lang/Object";
+
+    private static void writeModifiers(LineSink out, int modifiers) {
+        for (int i = 0; i < ACCESS_FLAGS.length; i++) {
+            if ((modifiers & ACCESS_FLAGS[i]) != 0) {
+                out.append(ACCESS_NAMES[i]).append(' ');
             }
-        });
+        }
+    }
+
+    private final Cache<HashCode, String> methodCache;
+    private final boolean outline;
+    private final Map<String, HashCode> fingerprints;
+    /**
+     * Instruction lines of the method being written when there is no cache, reused across methods.
+     */
+    private final StringBuilder instructions = new StringBuilder();
+
+    public BytecodeMarkup() {
+        this(null);
     }
 
-    public void write(Consumer<ClassVisitor> node, ITextOutput output) {
-        node.accept(new PrintingClassVisitor(output));
+    /**
+     * @param methodCache instruction lines of already printed methods by {@link MethodFingerprint}, or
+     *                    <code>null</code> to print every method.
+     */
+    public BytecodeMarkup(Cache<HashCode, String> methodCache) {
+        this(methodCache, false);
     }
 
-    private static class PrintingClassVisitor extends ClassVisitor {
-        private final ITextOutput output;
-        private boolean firstMember = true;
+    /**
+     * @param outline whether to write a {@link BytecodeOutline#placeholder(MethodNode)} instead of the instructions
+     *                of each method.
+     */
+    public BytecodeMarkup(Cache<HashCode, String> methodCache, boolean outline) {
+        this(methodCache, outline, null);
+    }
+
+    /**
+     * @param fingerprints the {@link MethodFingerprint#ofMethods(ClassNode)} of the class to write, or
+     *                     <code>null</code> to compute them as needed.
+     */
+    BytecodeMarkup(Cache<HashCode, String> methodCache, boolean outline, Map<String, HashCode> fingerprints) {
+        this.methodCache = methodCache;
+        this.outline = outline;
+        this.fingerprints = fingerprints;
+    }
 
-        public PrintingClassVisitor(ITextOutput output) {
-            super(Opcodes.ASM5);
-            this.output = output;
+    /**
+     * Write the given class. This visits the methods of <code>node</code>, so it must not be visited concurrently.
+     */
+    public void write(ClassNode node, LineSink out) {
+        writeClassHeader(node, out);
+        out.append(" {").newLine();
+        out.indent();
+
+        boolean firstMember = true;
+        for (FieldNode field : node.fields) {
+            if (!firstMember) { out.newLine(); }
+            firstMember = false;
+            writeField(field, out);
+        }
+        for (MethodNode method : node.methods) {
+            if (!firstMember) { out.newLine(); }
+            firstMember = false;
+            writeMethod(method, out);
         }
 
-        @Override
-        public void visit(
-                int version, int access, String name, String signature, String superName, String[] interfaces) {
-            super.visit(version, access, name, signature, superName, interfaces);
-            writeModifiers(output, access, Opcodes.ACC_SYNCHRONIZED);
-            output.write("class ");
-            output.write(name);
-            if (superName != null && !superName.equals(Type.getType(Object.class).getInternalName())) {
-                output.write(" extends %s", superName);
-            }
-            for (int i = 0; i < interfaces.length; i++) {
-                if (i == 0) {
-                    output.write(" implements");
-                } else {
-                    output.write(", ");
-                }
-                output.write(" %s", interfaces[i]);
-            }
-            output.write(" {");
-            output.writeLine();
-            output.indent();
+        out.unindent();
+        out.append('}').newLine();
+    }
+
+    /**
+     * Write modifiers, name, super class and interfaces of a class, without the opening brace.
+     */
+    static void writeClassHeader(ClassNode node, LineSink out) {
+        // ACC_SYNCHRONIZED is ACC_SUPER on classes
+        writeModifiers(out, node.access & ~Opcodes.ACC_SYNCHRONIZED);
+        out.append("class ").append(node.name);
+        if (node.superName != null && !node.superName.equals(OBJECT)) {
+            out.append(" extends ").append(node.superName);
+        }
+        for (int i = 0; i < node.interfaces.size(); i++) {
+            out.append(i == 0 ? " implements " : ",  ").append(node.interfaces.get(i));
         }
+    }
 
-        @Override
-        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
-            visitMember();
-            writeModifiers(output, access);
-            output.write(Type.getType(desc).getClassName());
-            output.write(' ');
-            output.write(name);
-            if (value instanceof String) {
-                output.write(" = \"" + ((String) value).replace("\"", "\\\"") + "\"");
-            } else if (value != null) {
-                output.write(" = " + value);
-            }
-            output.write(';');
-            output.writeLine();
-            return super.visitField(access, name, desc, signature, value);
+    /**
+     * Write a field declaration line.
+     */
+    static void writeField(FieldNode field, LineSink out) {
+        writeModifiers(out, field.access);
+        out.append(Type.getType(field.desc).getClassName()).append(' ').append(field.name);
+        if (field.value instanceof String) {
+            out.append(" = \"").appendEscaped((String) field.value).append('"');
+        } else if (field.value != null) {
+            out.append(" = ").append(field.value.toString());
         }
+        out.append(';').newLine();
+    }
 
-        private void visitMember() {
-            if (!firstMember) {
-                output.writeLine();
+    private void writeMethod(MethodNode method, LineSink out) {
+        writeMethodHeader(method, out);
+        out.append(" {").newLine();
+        out.indent();
+
+        if (!outline) {
+            if (methodCache == null) {
+                instructions.setLength(0);
+                printInstructions(method, instructions);
+                out.appendLines(instructions);
             } else {
-                firstMember = false;
+                HashCode fingerprint = fingerprints == null ? null : fingerprints.get(MethodFingerprint.key(method));
+                if (fingerprint == null) {
+                    fingerprint = MethodFingerprint.of(method);
+                }
+                out.appendLines(printInstructions(method, fingerprint, methodCache));
             }
+        } else if (method.instructions.size() > 0) {
+            out.append(BytecodeOutline.placeholder(method)).newLine();
         }
 
-        @Override
-        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
-            visitMember();
-
-            writeModifiers(output, access);
-            output.write(Type.getReturnType(desc).getClassName());
-            output.write(' ');
-            output.write(name);
-            output.write('(');
-            Type[] argumentTypes = Type.getArgumentTypes(desc);
-            for (int i = 0; i < argumentTypes.length; i++) {
-                if (i > 0) { output.write(", "); }
-                output.write(argumentTypes[i].getClassName());
-                output.write(' ');
-                output.write((char) ('a' + i)); // lets hope nobody uses > 26 args
-            }
-            output.write(") {");
-            output.writeLine();
-            output.indent();
-            return new PrintingMethodVisitor2(new MethodNode(Opcodes.ASM5, access, name, desc, signature, exceptions));
-        }
+        out.unindent();
+        out.append('}').newLine();
+    }
 
-        @Override
-        public void visitEnd() {
-            output.unindent();
-            output.writeLine("}");
+    /**
+     * Write modifiers, return type, name and parameters of a method, without the opening brace.
+     */
+    static void writeMethodHeader(MethodNode method, LineSink out) {
+        writeModifiers(out, method.access);
+        out.append(Type.getReturnType(method.desc).getClassName()).append(' ').append(method.name).append('(');
+        Type[] argumentTypes = Type.getArgumentTypes(method.desc);
+        for (int i = 0; i < argumentTypes.length; i++) {
+            if (i > 0) { out.append(", "); }
+            out.append(argumentTypes[i].getClassName()).append(' ');
+            out.append((char) ('a' + i)); // lets hope nobody uses > 26 args
         }
+        out.append(')');
+    }
 
-        private class PrintingMethodVisitor2 extends MethodVisitor {
-            private final MethodNode method;
+    /**
+     * @return the instruction lines of the given method, each terminated by a line break, taken from the cache if
+     * possible.
+     */
+    static String printInstructions(MethodNode method, Cache<HashCode, String> methodCache) {
+        return printInstructions(method, MethodFingerprint.of(method), methodCache);
+    }
 
-            public PrintingMethodVisitor2(MethodNode node) {
-                super(Opcodes.ASM5, node);
-                this.method = node;
-            }
+    /**
+     * @param fingerprint the {@link MethodFingerprint} of <code>method</code>
+     */
+    private static String printInstructions(MethodNode method, HashCode fingerprint,
+                                            Cache<HashCode, String> methodCache) {
+        String lines = methodCache.getIfPresent(fingerprint);
+        if (lines == null) {
+            StringBuilder builder = new StringBuilder(method.instructions.size() * 24);
+            printInstructions(method, builder);
+            lines = builder.toString();
+            methodCache.put(fingerprint, lines);
+        }
+        return lines;
+    }
 
-            @Override
-            public void visitEnd() {
-                super.visitEnd();
-
-                ListIterator<AbstractInsnNode> iterator = method.instructions.iterator();
-                while (iterator.hasNext()) {
-                    AbstractInsnNode node = iterator.next();
-                    StringBuilder builder = new StringBuilder(".");
-                    boolean printed = Instructions.print(builder, method, node);
-                    if (!printed) {
-                        int opcode = node.getOpcode() & 0xff;
-                        if (opcode > Printer.OPCODES.length) { continue; }
-                        builder.append(Printer.OPCODES[opcode]);
-                    }
-                    output.writeLine(builder.toString().replace("\n", "\\n"));
+    private static void printInstructions(MethodNode method, StringBuilder out) {
+        ListIterator<AbstractInsnNode> iterator = method.instructions.iterator();
+        while (iterator.hasNext()) {
+            AbstractInsnNode node = iterator.next();
+            int start = out.length();
+            out.append('.');
+            boolean printed = Instructions.print(out, method, node);
+            if (!printed) {
+                int opcode = node.getOpcode() & 0xff;
+                if (opcode >= Printer.OPCODES.length) {
+                    out.setLength(start);
+                    continue;
+                }
+                out.append(Printer.OPCODES[opcode]);
+            }
+            // escape line breaks in place, they only show up in string constants
+            for (int i = start; i < out.length(); i++) {
+                if (out.charAt(i) == '\n') {
+                    out.replace(i, i + 1, "\\n");
                 }
-                output.unindent();
-                output.writeLine("}");
             }
+            out.append('\n');
         }
     }
 }
@@ -0,0 +1,158 @@
+package at.yawk.patchtools.editor;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.fxmisc.richtext.CodeArea;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Outline mode of the bytecode view for huge classes. The render stage only prints method headers with a placeholder
+ * line in place of the instructions, and a method's instructions are rendered when the caret enters its placeholder.
+ * Only the most recently visited methods stay expanded, older ones collapse again.
+ *
+ * @author yawkat
+ */
+class BytecodeOutline {
+    /**
+     * Classes with more instructions than this are shown as an outline.
+     */
+    static final int THRESHOLD = 20000;
+    private static final int MAX_EXPANDED = 16;
+
+    private static final String PLACEHOLDER_PREFIX = "// ";
+    private static final String PLACEHOLDER_SEPARATOR = ": ";
+    private static final String PLACEHOLDER_SUFFIX = " instructions, move the caret here to expand";
+
+    private final CodeArea area;
+    private final Consumer<String> display;
+    private final Function<MethodNode, String[]> instructions;
+
+    /**
+     * Keys of the expanded methods, least recently visited first.
+     */
+    private final Set<String> expanded = new LinkedHashSet<>();
+    /**
+     * The outline text of the shown class, or <code>null</code> if the view is not in outline mode.
+     */
+    private String outline;
+    private Map<String, MethodNode> methods = new HashMap<>();
+    private boolean updating;
+
+    /**
+     * @param display      replaces the text of the area
+     * @param instructions renders the instruction lines of a method
+     */
+    BytecodeOutline(CodeArea area, Consumer<String> display, Function<MethodNode, String[]> instructions) {
+        this.area = area;
+        this.display = display;
+        this.instructions = instructions;
+        area.caretPositionProperty().addListener((observable, oldValue, newValue) -> onCaretMoved());
+    }
+
+    static boolean shouldOutline(ClassNode node) {
+        int count = 0;
+        for (MethodNode method : node.methods) {
+            count += method.instructions.size();
+        }
+        return count > THRESHOLD;
+    }
+
+    private static String key(MethodNode method) {
+        return method.name + method.desc;
+    }
+
+    /**
+     * @return the line that stands in for the instructions of the given method in an outline.
+     */
+    static String placeholder(MethodNode method) {
+        return PLACEHOLDER_PREFIX + key(method) + PLACEHOLDER_SEPARATOR + method.instructions.size() +
+               PLACEHOLDER_SUFFIX;
+    }
+
+    /**
+     * @return the method key of a placeholder line or <code>null</code> if the line is no placeholder.
+     */
+    private static String placeholderKey(String line) {
+        String trimmed = line.trim();
+        if (!trimmed.startsWith(PLACEHOLDER_PREFIX) || !trimmed.endsWith(PLACEHOLDER_SUFFIX)) { return null; }
+        int separator = trimmed.lastIndexOf(PLACEHOLDER_SEPARATOR);
+        if (separator < PLACEHOLDER_PREFIX.length()) { return null; }
+        return trimmed.substring(PLACEHOLDER_PREFIX.length(), separator);
+    }
+
+    /**
+     * Show a rendered bytecode view.
+     *
+     * @param node the rendered class if <code>text</code> is an outline, <code>null</code> otherwise. Owned by the
+     *             outline afterwards.
+     */
+    void show(String text, ClassNode node) {
+        if (node == null) {
+            outline = null;
+            methods = new HashMap<>();
+            update(text);
+            return;
+        }
+        outline = text;
+        methods = new HashMap<>();
+        for (MethodNode method : node.methods) {
+            methods.put(key(method), method);
+        }
+        refresh();
+    }
+
+    /**
+     * Collapse all methods, for example because another class was opened.
+     */
+    void collapseAll() {
+        expanded.clear();
+    }
+
+    private void onCaretMoved() {
+        if (updating || outline == null) { return; }
+        String key = placeholderKey(area.getParagraph(area.getCurrentParagraph()).toString());
+        if (key != null && methods.containsKey(key)) {
+            expanded.remove(key);
+            expanded.add(key);
+            if (expanded.size() > MAX_EXPANDED) {
+                Iterator<String> eldest = expanded.iterator();
+                eldest.next();
+                eldest.remove();
+            }
+            refresh();
+        }
+    }
+
+    private void refresh() {
+        StringBuilder text = new StringBuilder(outline.length());
+        for (String line : outline.split("\n", -1)) {
+            String key = placeholderKey(line);
+            MethodNode method = key == null || !expanded.contains(key) ? null : methods.get(key);
+            if (method == null) {
+                text.append(line).append('\n');
+            } else {
+                String indent = line.substring(0, line.indexOf(PLACEHOLDER_PREFIX));
+                for (String instruction : instructions.apply(method)) {
+                    text.append(indent).append(instruction).append('\n');
+                }
+            }
+        }
+        text.setLength(text.length() - 1);
+        update(text.toString());
+    }
+
+    private void update(String text) {
+        updating = true;
+        try {
+            display.accept(text);
+        } finally {
+            updating = false;
+        }
+    }
+}
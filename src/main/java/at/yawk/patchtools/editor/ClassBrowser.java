@@ -0,0 +1,101 @@
+package at.yawk.patchtools.editor;
+
+import java.util.Optional;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+
+/**
+ * Modal dialog to pick a class of a {@link JarIndex} by typing part of its name.
+ *
+ * @author yawkat
+ */
+class ClassBrowser {
+    private static final int MAX_RESULTS = 200;
+
+    private final JarIndex index;
+    private final Stage stage = new Stage();
+    private final TextField query = new TextField();
+    private final ListView<String> results = new ListView<>();
+    private final Label status = new Label();
+
+    private String selected;
+
+    private ClassBrowser(Window owner, JarIndex index) {
+        this.index = index;
+
+        query.setPromptText("Class name");
+        query.textProperty().addListener((observable, oldValue, newValue) -> update());
+        query.setOnKeyPressed(evt -> {
+            if (evt.getCode() == KeyCode.DOWN) {
+                results.requestFocus();
+                results.getSelectionModel().selectFirst();
+                evt.consume();
+            } else if (evt.getCode() == KeyCode.ENTER) {
+                results.getSelectionModel().selectFirst();
+                accept();
+            }
+        });
+        results.setOnKeyPressed(evt -> {
+            if (evt.getCode() == KeyCode.ENTER) { accept(); }
+        });
+        results.setOnMouseClicked(evt -> {
+            if (evt.getButton() == MouseButton.PRIMARY && evt.getClickCount() == 2) { accept(); }
+        });
+
+        VBox root = new VBox(5, query, results, status);
+        root.setPadding(new Insets(10));
+        VBox.setVgrow(results, Priority.ALWAYS);
+        Scene scene = new Scene(root, 500, 400);
+        scene.setOnKeyPressed(evt -> {
+            if (evt.getCode() == KeyCode.ESCAPE) { stage.close(); }
+        });
+
+        stage.initOwner(owner);
+        stage.initModality(Modality.APPLICATION_MODAL);
+        stage.setTitle(index.getPath().getFileName().toString());
+        stage.setScene(scene);
+
+        index.getReady().whenComplete((r, e) -> Platform.runLater(this::update));
+        update();
+    }
+
+    /**
+     * Show a class browser for the given jar and wait for the user to pick a class.
+     *
+     * @return the dotted name of the picked class.
+     */
+    static Optional<String> show(Window owner, JarIndex index) {
+        ClassBrowser browser = new ClassBrowser(owner, index);
+        browser.stage.showAndWait();
+        return Optional.ofNullable(browser.selected);
+    }
+
+    private void update() {
+        results.getItems().setAll(index.search(query.getText(), MAX_RESULTS));
+        if (!index.getReady().isDone()) {
+            status.setText("Indexing\u2026");
+        } else if (results.getItems().size() >= MAX_RESULTS) {
+            status.setText("Showing the first " + MAX_RESULTS + " matches");
+        } else {
+            status.setText(results.getItems().size() + " matches");
+        }
+    }
+
+    private void accept() {
+        selected = results.getSelectionModel().getSelectedItem();
+        if (selected != null) {
+            stage.close();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package at.yawk.patchtools.editor;
+
+import com.google.common.hash.HashCode;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * Immutable class file. The {@link ClassReader} is parsed once and can be shared between threads, every caller gets
+ * its own {@link ClassNode} from it.
+ *
+ * @author yawkat
+ */
+final class ClassSnapshot {
+    private final byte[] bytes;
+    private final ClassReader reader;
+    private final HashCode hash;
+
+    /**
+     * @param bytes the class file, must not be modified afterwards.
+     */
+    ClassSnapshot(byte[] bytes) {
+        this.bytes = bytes;
+        this.reader = new ClassReader(bytes);
+        this.hash = ComputedCodeCache.hash(bytes);
+    }
+
+    /**
+     * @return the internal name of the class.
+     */
+    String getName() {
+        return reader.getClassName();
+    }
+
+    HashCode getHash() {
+        return hash;
+    }
+
+    /**
+     * @return the length of the class file in bytes.
+     */
+    int getSize() {
+        return bytes.length;
+    }
+
+    /**
+     * @return a copy of the class file.
+     */
+    byte[] getBytes() {
+        return bytes.clone();
+    }
+
+    /**
+     * @return a new, mutable tree of this class.
+     */
+    ClassNode newNode() {
+        ClassNode node = new ClassNode(Opcodes.ASM5);
+        reader.accept(node, 0);
+        return node;
+    }
+}
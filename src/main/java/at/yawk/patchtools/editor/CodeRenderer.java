@@ -0,0 +1,323 @@
+package at.yawk.patchtools.editor;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.strobel.assembler.metadata.Buffer;
+import com.strobel.assembler.metadata.ClassFileReader;
+import com.strobel.assembler.metadata.ClasspathTypeLoader;
+import com.strobel.assembler.metadata.CompositeTypeLoader;
+import com.strobel.assembler.metadata.ITypeLoader;
+import com.strobel.assembler.metadata.MetadataSystem;
+import com.strobel.assembler.metadata.MethodDefinition;
+import com.strobel.assembler.metadata.TypeDefinition;
+import com.strobel.decompiler.DecompilationOptions;
+import com.strobel.decompiler.DecompilerContext;
+import com.strobel.decompiler.DecompilerSettings;
+import com.strobel.decompiler.PlainTextOutput;
+import com.strobel.decompiler.languages.java.JavaLanguage;
+import com.strobel.decompiler.languages.java.ast.AstBuilder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.HashMap;
+import java.util.Map;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Renders the bytecode and java views of a class. Methods that did not change since an earlier render, as decided by
+ * their {@link MethodFingerprint} and, for the java view, the rest of their class, reuse their previously rendered
+ * text.
+ *
+ * @author yawkat
+ */
+class CodeRenderer {
+    /**
+     * Classes with at least this many methods are decompiled method by method. Smaller classes are decompiled as a
+     * whole, which gives nicer output (imports, field initializers) at a cost that does not matter for them.
+     */
+    private static final int PER_METHOD_THRESHOLD = 32;
+    private static final String INDENT = "    ";
+
+    /**
+     * Markup output buffer of each render thread.
+     */
+    private static final ThreadLocal<LineSink> MARKUP_SINK = ThreadLocal.withInitial(() -> new LineSink("  "));
+
+    private final Cache<HashCode, String> markupCache;
+    /**
+     * Decompiled methods and class skeletons.
+     */
+    private final Cache<HashCode, String> javaCache;
+    private final DecompilerSettings settings = new DecompilerSettings();
+    /**
+     * Loads types referenced by decompiled classes. Each decompile resolves them in its own {@link MetadataSystem} on
+     * top of this loader, so the class being decompiled is always read from its current bytes and never from a copy a
+     * longer-lived system cached in an earlier render.
+     */
+    private volatile ITypeLoader typeLoader = new ClasspathTypeLoader();
+    /**
+     * Identifies where {@link #typeLoader} resolves types from.
+     */
+    private volatile String typeContext = "classpath";
+
+    /**
+     * @param budget approximate memory budget of each per-method cache in bytes.
+     */
+    CodeRenderer(long budget) {
+        markupCache = CacheBuilder.newBuilder()
+                .maximumWeight(budget)
+                .<HashCode, String>weigher((k, v) -> 64 + 2 * v.length())
+                .build();
+        javaCache = CacheBuilder.newBuilder()
+                .maximumWeight(budget)
+                .<HashCode, String>weigher((k, v) -> 64 + 2 * v.length())
+                .build();
+    }
+
+    /**
+     * Resolve referenced types from the given jar before falling back to the running JVM.
+     */
+    void setJar(JarIndex jar) {
+        typeLoader = new CompositeTypeLoader(new JarTypeLoader(jar), new ClasspathTypeLoader());
+        typeContext = "jar " + jar.getPath().toAbsolutePath();
+        try {
+            // a rebuilt jar at the same path may resolve types differently
+            typeContext += " " + Files.size(jar.getPath()) + " " + Files.getLastModifiedTime(jar.getPath()).toMillis();
+        } catch (IOException ignored) {}
+        // skeletons and methods decompiled so far may have resolved their references differently
+        javaCache.invalidateAll();
+    }
+
+    /**
+     * @return where referenced types are resolved from, which the decompiled text depends on. Stable across sessions
+     * for the same jar.
+     */
+    String getTypeContext() {
+        return typeContext;
+    }
+
+    String markup(ClassNode node) {
+        return markup(node, false, null);
+    }
+
+    /**
+     * @param outline      whether to only print method headers, see {@link BytecodeOutline}.
+     * @param fingerprints the {@link MethodFingerprint#ofMethods(ClassNode)} of <code>node</code>, shared with
+     *                     {@link #decompile(byte[], Map, EvaluationScheduler.Cancellation)} of the same render, or
+     *                     <code>null</code> to compute them as needed.
+     */
+    String markup(ClassNode node, boolean outline, Map<String, HashCode> fingerprints) {
+        LineSink sink = MARKUP_SINK.get();
+        sink.clear();
+        new BytecodeMarkup(markupCache, outline, fingerprints).write(node, sink);
+        return sink.toString();
+    }
+
+    /**
+     * @return the instruction lines of a single method, as {@link #markup(ClassNode)} prints them.
+     */
+    String[] instructions(MethodNode method) {
+        String lines = BytecodeMarkup.printInstructions(method, markupCache);
+        return lines.isEmpty() ? new String[0] : lines.split("\n");
+    }
+
+    String decompile(byte[] bytes, EvaluationScheduler.Cancellation cancellation) {
+        return decompile(bytes, null, cancellation);
+    }
+
+    /**
+     * Decompile a class. This only reads <code>bytes</code>, so it can run concurrently with {@link #markup(ClassNode)}
+     * of the same class. When decompiling method by method, the cancellation is checked between methods.
+     *
+     * @param fingerprints the {@link MethodFingerprint#ofMethods(ClassNode)} of the class, or <code>null</code> to
+     *                     compute them as needed.
+     * @throws UncheckedIOException if a referenced type could not be read from the jar.
+     */
+    String decompile(byte[] bytes, Map<String, HashCode> fingerprints,
+                     EvaluationScheduler.Cancellation cancellation) {
+        ClassNode node = new ClassNode(Opcodes.ASM5);
+        new ClassReader(bytes).accept(node, 0);
+        MetadataSystem metadataSystem = new MetadataSystem(
+                new CompositeTypeLoader(new SingleTypeLoader(node.name, bytes), typeLoader));
+        if (node.methods.size() < PER_METHOD_THRESHOLD) {
+            return decompileType(readType(bytes, metadataSystem));
+        }
+
+        byte[] skeletonBytes = skeleton(node);
+        HashCode skeletonHash = ComputedCodeCache.hash(skeletonBytes);
+        String skeleton = decompileSkeleton(skeletonBytes, skeletonHash, metadataSystem);
+        int end = skeleton.lastIndexOf('}');
+        if (end == -1) {
+            return decompileType(readType(bytes, metadataSystem));
+        }
+
+        // the output of a method also depends on the class around it: header, fields and the other methods
+        Hasher context = Hashing.sha1().newHasher().putBytes(skeletonHash.asBytes());
+        Map<String, MethodNode> methodNodes = new HashMap<>();
+        for (MethodNode method : node.methods) {
+            methodNodes.put(MethodFingerprint.key(method), method);
+            context.putInt(method.access)
+                    .putString(method.name, StandardCharsets.UTF_8).putByte((byte) 0)
+                    .putString(method.desc, StandardCharsets.UTF_8).putByte((byte) 0)
+                    .putString(String.valueOf(method.signature), StandardCharsets.UTF_8).putByte((byte) 0);
+        }
+        byte[] contextHash = context.hash().asBytes();
+
+        StringBuilder result = new StringBuilder(skeleton.length() + 64 * node.methods.size());
+        result.append(skeleton, 0, end);
+        for (MethodDefinition method : readType(bytes, metadataSystem).getDeclaredMethods()) {
+            if (method.isSynthetic()) { continue; }
+            cancellation.checkpoint();
+            String methodKey = method.getName() + method.getErasedSignature();
+            MethodNode methodNode = methodNodes.get(methodKey);
+            String text;
+            if (methodNode == null) {
+                text = decompileMethod(method);
+            } else {
+                HashCode fingerprint = fingerprints == null ? null : fingerprints.get(methodKey);
+                if (fingerprint == null) {
+                    fingerprint = MethodFingerprint.of(methodNode);
+                }
+                HashCode key = Hashing.sha1().newHasher()
+                        .putBytes(contextHash)
+                        .putBytes(fingerprint.asBytes())
+                        .hash();
+                text = javaCache.getIfPresent(key);
+                if (text == null) {
+                    text = decompileMethod(method);
+                    javaCache.put(key, text);
+                }
+            }
+
+            result.append('\n');
+            for (String line : text.split("\n")) {
+                if (!line.isEmpty()) {
+                    result.append(INDENT).append(line);
+                }
+                result.append('\n');
+            }
+        }
+        result.append(skeleton, end, skeleton.length());
+        return result.toString();
+    }
+
+    private static TypeDefinition readType(byte[] bytes, MetadataSystem metadataSystem) {
+        return ClassFileReader.readClass(
+                ClassFileReader.OPTION_PROCESS_ANNOTATIONS | ClassFileReader.OPTION_PROCESS_CODE,
+                metadataSystem,
+                new Buffer(bytes)
+        );
+    }
+
+    private String decompileType(TypeDefinition type) {
+        AstBuilder builder = new AstBuilder(new DecompilerContext(settings));
+        builder.addType(type);
+        PlainTextOutput output = new PlainTextOutput();
+        builder.generateCode(output);
+        return output.toString();
+    }
+
+    private String decompileMethod(MethodDefinition method) {
+        DecompilationOptions options = new DecompilationOptions();
+        options.setSettings(settings);
+        options.setFullDecompilation(true);
+        PlainTextOutput output = new PlainTextOutput();
+        new JavaLanguage().decompileMethod(method, output, options);
+        return output.toString();
+    }
+
+    private static void load(byte[] bytes, Buffer buffer) {
+        buffer.reset(bytes.length);
+        buffer.putByteArray(bytes, 0, bytes.length);
+        buffer.position(0);
+    }
+
+    /**
+     * Type loader that reads classes through the jar handle the editor already has open. I/O errors other than a
+     * missing class are rethrown so they fail the decompile instead of silently leaving the type unresolved.
+     */
+    private static class JarTypeLoader implements ITypeLoader {
+        private final JarIndex jar;
+
+        public JarTypeLoader(JarIndex jar) {
+            this.jar = jar;
+        }
+
+        @Override
+        public synchronized boolean tryLoadType(String internalName, Buffer buffer) {
+            byte[] bytes;
+            try {
+                bytes = jar.readClass(internalName);
+            } catch (NoSuchFileException e) {
+                return false;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + internalName + " from the jar", e);
+            }
+            load(bytes, buffer);
+            return true;
+        }
+    }
+
+    /**
+     * Type loader that serves the class being decompiled, so its references to itself see its current members
+     * rather than the unpatched copy in the jar.
+     */
+    private static class SingleTypeLoader implements ITypeLoader {
+        private final String internalName;
+        private final byte[] bytes;
+
+        public SingleTypeLoader(String internalName, byte[] bytes) {
+            this.internalName = internalName;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public boolean tryLoadType(String internalName, Buffer buffer) {
+            if (!this.internalName.equals(internalName)) {
+                return false;
+            }
+            load(bytes, buffer);
+            return true;
+        }
+    }
+
+    /**
+     * @return the class without its methods.
+     */
+    private static byte[] skeleton(ClassNode node) {
+        ClassWriter writer = new ClassWriter(0);
+        node.accept(new ClassVisitor(Opcodes.ASM5, writer) {
+            @Override
+            public MethodVisitor visitMethod(
+                    int access, String name, String desc, String signature, String[] exceptions) {
+                return null;
+            }
+        });
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decompile the class without its methods, which gives us the package, header, fields and closing brace.
+     *
+     * @param hash the hash of <code>bytes</code>
+     */
+    private String decompileSkeleton(byte[] bytes, HashCode hash, MetadataSystem metadataSystem) {
+        String skeleton = javaCache.getIfPresent(hash);
+        if (skeleton == null) {
+            skeleton = decompileType(readType(bytes, metadataSystem));
+            javaCache.put(hash, skeleton);
+        }
+        return skeleton;
+    }
+}
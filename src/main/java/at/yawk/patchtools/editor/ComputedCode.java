@@ -0,0 +1,23 @@
+package at.yawk.patchtools.editor;
+
+/**
+ * Rendered bytecode and java views of a class.
+ *
+ * @author yawkat
+ */
+class ComputedCode {
+    final String byteCode;
+    final String javaCode;
+
+    public ComputedCode(String byteCode, String javaCode) {
+        this.byteCode = byteCode;
+        this.javaCode = javaCode;
+    }
+
+    /**
+     * @return the approximate heap size of this object in bytes.
+     */
+    long getWeight() {
+        return 64 + 2L * (byteCode.length() + javaCode.length());
+    }
+}
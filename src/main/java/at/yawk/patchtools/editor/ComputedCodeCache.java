@@ -0,0 +1,79 @@
+package at.yawk.patchtools.editor;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Bounded LRU cache of {@link ComputedCode}, keyed by a hash of the class bytes it was rendered from and how it was
+ * rendered, see {@link #key(HashCode, boolean, String)}. Byte-identical classes (after an undo or a comment-only
+ * patch edit) skip both renderers. Optionally backed by a {@link DiskCache} that keeps views across sessions.
+ *
+ * @author yawkat
+ */
+class ComputedCodeCache {
+    static final long DEFAULT_BUDGET = 64L << 20;
+
+    private final Cache<HashCode, ComputedCode> cache;
+    private final DiskCache disk;
+
+    /**
+     * @param budget approximate memory budget of the cached views in bytes.
+     */
+    ComputedCodeCache(long budget) {
+        this(budget, null);
+    }
+
+    /**
+     * @param disk second level cache, or <code>null</code> to only cache in memory.
+     */
+    ComputedCodeCache(long budget, DiskCache disk) {
+        this.disk = disk;
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(budget)
+                .<HashCode, ComputedCode>weigher((k, v) -> (int) Math.min(v.getWeight(), Integer.MAX_VALUE))
+                .build();
+    }
+
+    static HashCode hash(byte[] classBytes) {
+        return Hashing.sha1().hashBytes(classBytes);
+    }
+
+    /**
+     * @param classHash   the {@link #hash(byte[])} of the rendered class.
+     * @param outline     whether the bytecode view only shows method headers, see {@link BytecodeOutline}.
+     * @param typeContext the {@link CodeRenderer#getTypeContext()} of the renderer.
+     * @return the cache key of the views of a class rendered this way.
+     */
+    static HashCode key(HashCode classHash, boolean outline, String typeContext) {
+        return Hashing.sha1().newHasher()
+                .putBytes(classHash.asBytes())
+                .putBoolean(outline)
+                .putString(typeContext, StandardCharsets.UTF_8)
+                .hash();
+    }
+
+    /**
+     * @param hash a {@link #key(HashCode, boolean, String)}
+     * @return the cached views or <code>null</code> if none are cached for this key.
+     */
+    ComputedCode get(HashCode hash) {
+        ComputedCode code = cache.getIfPresent(hash);
+        if (code == null && disk != null) {
+            code = disk.get(hash);
+            if (code != null) {
+                cache.put(hash, code);
+            }
+        }
+        return code;
+    }
+
+    void put(HashCode hash, ComputedCode code) {
+        cache.put(hash, code);
+        if (disk != null) {
+            disk.put(hash, code);
+        }
+    }
+}
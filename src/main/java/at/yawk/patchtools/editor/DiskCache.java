@@ -0,0 +1,229 @@
+package at.yawk.patchtools.editor;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.strobel.decompiler.DecompilerSettings;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import uk.co.thinkofdeath.patchtools.Patcher;
+
+/**
+ * {@link ComputedCode} stored across sessions, one file per class in a cache directory. Entries are keyed by the
+ * {@link ComputedCodeCache#key(HashCode, boolean, String)}, which covers the class, render mode and type resolution,
+ * and the versions of everything else that influences the rendered text. They are evicted least recently used first
+ * (by modification time, which reads update) once the directory exceeds its size cap.
+ *
+ * File format: magic, byte code length, java code length (all big endian ints), then both texts in UTF-8.
+ *
+ * @author yawkat
+ */
+class DiskCache {
+    static final long DEFAULT_CAP = 256L << 20;
+
+    private static final int MAGIC = 0x70746563;
+    private static final int HEADER_SIZE = 12;
+    private static final String SUFFIX = ".view";
+    /**
+     * Bump when the output of the renderers changes in a way the library versions do not capture.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path directory;
+    private final long cap;
+    private final byte[] versionKey;
+    private final Consumer<IOException> errorHandler;
+    private final Executor writer = Executors.newSingleThreadExecutor(new DaemonThreadFactory());
+
+    /**
+     * Total size of the cache files, <code>-1</code> until it was measured.
+     */
+    private long size = -1;
+
+    /**
+     * @param cap          size cap of the cache directory in bytes.
+     * @param errorHandler called with errors reading or writing the cache, possibly on a background thread. The
+     *                     cache treats failed reads as misses and drops failed writes.
+     */
+    DiskCache(Path directory, long cap, Consumer<IOException> errorHandler) {
+        this.directory = directory;
+        this.cap = cap;
+        this.errorHandler = errorHandler;
+        this.versionKey = Hashing.sha1().newHasher()
+                .putInt(FORMAT_VERSION)
+                .putString(version(DiskCache.class, "at.yawk.patchtools.editor", "patchtools-editor"),
+                           StandardCharsets.UTF_8)
+                .putString(version(DecompilerSettings.class, "org.bitbucket.mstrobel", "procyon-compilertools"),
+                           StandardCharsets.UTF_8)
+                .putString(version(Patcher.class, "uk.co.thinkofdeath.patchtools", "patchtools"),
+                           StandardCharsets.UTF_8)
+                .hash().asBytes();
+    }
+
+    static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".cache", "patchtools-editor", "views");
+    }
+
+    /**
+     * @return the maven version of the artifact containing the given class. Snapshot versions include the time the
+     * artifact was built, so every build gets its own entries.
+     */
+    private static String version(Class<?> member, String groupId, String artifactId) {
+        String version = null;
+        String resource = "/META-INF/maven/" + groupId + "/" + artifactId + "/pom.properties";
+        try (InputStream in = member.getResourceAsStream(resource)) {
+            if (in != null) {
+                Properties properties = new Properties();
+                properties.load(in);
+                version = properties.getProperty("version");
+            }
+        } catch (IOException ignored) {}
+        if (version == null) {
+            version = "unknown";
+        }
+        if (version.equals("unknown") || version.endsWith("-SNAPSHOT")) {
+            CodeSource source = member.getProtectionDomain().getCodeSource();
+            if (source != null) {
+                try {
+                    version += "@" + Files.getLastModifiedTime(Paths.get(source.getLocation().toURI())).toMillis();
+                } catch (IOException | URISyntaxException | RuntimeException ignored) {}
+            }
+        }
+        return version;
+    }
+
+    private Path file(HashCode hash) {
+        String name = Hashing.sha1().newHasher()
+                .putBytes(versionKey)
+                .putBytes(hash.asBytes())
+                .hash().toString();
+        return directory.resolve(name.substring(0, 2)).resolve(name + SUFFIX);
+    }
+
+    /**
+     * @return the stored views or <code>null</code> if none are stored for this key.
+     */
+    ComputedCode get(HashCode hash) {
+        Path file = file(hash);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) { return null; }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (buffer.getInt() != MAGIC) { return null; }
+            int byteCodeLength = buffer.getInt();
+            int javaCodeLength = buffer.getInt();
+            if (byteCodeLength < 0 || javaCodeLength < 0 ||
+                (long) HEADER_SIZE + byteCodeLength + javaCodeLength != length) {
+                return null;
+            }
+            String byteCode = decode(buffer, byteCodeLength);
+            String javaCode = decode(buffer, javaCodeLength);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new ComputedCode(byteCode, javaCode);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            errorHandler.accept(e);
+            return null;
+        }
+    }
+
+    private static String decode(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return StandardCharsets.UTF_8.decode(slice).toString();
+    }
+
+    /**
+     * Store views in the background.
+     */
+    void put(HashCode hash, ComputedCode code) {
+        writer.execute(() -> {
+            try {
+                write(file(hash), code);
+            } catch (IOException e) {
+                errorHandler.accept(e);
+            }
+        });
+    }
+
+    private void write(Path file, ComputedCode code) throws IOException {
+        byte[] byteCode = code.byteCode.getBytes(StandardCharsets.UTF_8);
+        byte[] javaCode = code.javaCode.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + byteCode.length + javaCode.length);
+        buffer.putInt(MAGIC).putInt(byteCode.length).putInt(javaCode.length).put(byteCode).put(javaCode);
+
+        Files.createDirectories(file.getParent());
+        Path temporary = Files.createTempFile(file.getParent(), "tmp", SUFFIX + ".tmp");
+        try {
+            Files.write(temporary, buffer.array());
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        if (size == -1) {
+            size = measure();
+        } else {
+            size += buffer.capacity();
+        }
+        if (size > cap) {
+            evict();
+        }
+    }
+
+    private List<Path> files() throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) { return files; }
+        try (Stream<Path> stream = Files.walk(directory, 2)) {
+            stream.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).forEach(files::add);
+        }
+        return files;
+    }
+
+    private long measure() throws IOException {
+        long total = 0;
+        for (Path file : files()) {
+            total += Files.size(file);
+        }
+        return total;
+    }
+
+    /**
+     * Delete the least recently used entries until we are 10% below the cap.
+     */
+    private void evict() throws IOException {
+        List<Path> files = files();
+        List<long[]> entries = new ArrayList<>(files.size());
+        long total = 0;
+        for (int i = 0; i < files.size(); i++) {
+            long size = Files.size(files.get(i));
+            entries.add(new long[]{ Files.getLastModifiedTime(files.get(i)).toMillis(), size, i });
+            total += size;
+        }
+        entries.sort(Comparator.comparingLong(entry -> entry[0]));
+        long target = cap - cap / 10;
+        for (long[] entry : entries) {
+            if (total <= target) { break; }
+            Files.deleteIfExists(files.get((int) entry[2]));
+            total -= entry[1];
+        }
+        size = total;
+    }
+}
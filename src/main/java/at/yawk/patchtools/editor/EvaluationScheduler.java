@@ -0,0 +1,133 @@
+package at.yawk.patchtools.editor;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs patch evaluations one at a time. At most one evaluation is in flight and at most one is pending: submitting a
+ * new evaluation replaces the pending one and cancels the running one, which stops at its next stage boundary.
+ *
+ * @author yawkat
+ */
+class EvaluationScheduler {
+    private final Executor worker = Executors.newSingleThreadExecutor(new DaemonThreadFactory());
+    private final BiConsumer<Throwable, Cancellation> errorHandler;
+
+    private Job running;
+    private Job pending;
+    private long submitted;
+    private long cancelled;
+
+    /**
+     * @param errorHandler called on the evaluation thread with anything but a {@link CancellationException} that an
+     *                     evaluation throws, and the cancellation of that evaluation.
+     */
+    EvaluationScheduler(BiConsumer<Throwable, Cancellation> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Submit an evaluation, superseding any evaluation that is running or pending.
+     */
+    synchronized void submit(Evaluation evaluation) {
+        submitted++;
+        if (pending != null) {
+            pending.cancellation.cancel();
+            cancelled++;
+        }
+        pending = new Job(evaluation);
+        if (running == null) {
+            startNext();
+        } else if (!running.cancellation.isCancelled()) {
+            running.cancellation.cancel();
+            cancelled++;
+        }
+    }
+
+    private synchronized void startNext() {
+        running = pending;
+        pending = null;
+        if (running != null) {
+            Job job = running;
+            worker.execute(() -> run(job));
+        }
+    }
+
+    private void run(Job job) {
+        try {
+            job.evaluation.run(job.cancellation);
+        } catch (CancellationException ignored) {
+        } catch (Throwable t) {
+            errorHandler.accept(t, job.cancellation);
+        } finally {
+            synchronized (this) {
+                startNext();
+            }
+        }
+    }
+
+    /**
+     * @return the number of evaluations that are running or waiting to run.
+     */
+    synchronized int getQueueDepth() {
+        return (running == null ? 0 : 1) + (pending == null ? 0 : 1);
+    }
+
+    synchronized long getSubmittedCount() {
+        return submitted;
+    }
+
+    /**
+     * @return the number of evaluations that were superseded before they could finish.
+     */
+    synchronized long getCancelledCount() {
+        return cancelled;
+    }
+
+    interface Evaluation {
+        /**
+         * Run this evaluation, calling {@link Cancellation#checkpoint()} between stages.
+         */
+        void run(Cancellation cancellation) throws Exception;
+    }
+
+    /**
+     * Cooperative cancellation flag of a single evaluation.
+     */
+    static class Cancellation {
+        /**
+         * Cancellation that is never cancelled, for work outside of a scheduler.
+         */
+        static final Cancellation NEVER = new Cancellation();
+
+        private volatile boolean cancelled;
+
+        private void cancel() {
+            cancelled = true;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @throws CancellationException if this evaluation was superseded.
+         */
+        void checkpoint() throws CancellationException {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+        }
+    }
+
+    private static class Job {
+        private final Evaluation evaluation;
+        private final Cancellation cancellation = new Cancellation();
+
+        public Job(Evaluation evaluation) {
+            this.evaluation = evaluation;
+        }
+    }
+}
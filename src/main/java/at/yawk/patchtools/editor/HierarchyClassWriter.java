@@ -0,0 +1,60 @@
+package at.yawk.patchtools.editor;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Function;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * {@link ClassWriter} that computes frames by resolving the class hierarchy from a set of class nodes instead of
+ * loading classes, falling back to the classes visible to the editor itself (the JDK).
+ *
+ * @author yawkat
+ */
+class HierarchyClassWriter extends ClassWriter {
+    private static final String OBJECT = "java/lang/Object";
+
+    private final Function<String, ClassNode> classes;
+
+    /**
+     * @param classes class node by internal name, or <code>null</code> if the class is not part of the set.
+     */
+    HierarchyClassWriter(Function<String, ClassNode> classes) {
+        super(COMPUTE_MAXS | COMPUTE_FRAMES);
+        this.classes = classes;
+    }
+
+    @Override
+    protected String getCommonSuperClass(String type1, String type2) {
+        if (type1.equals(type2)) { return type1; }
+        Set<String> ancestors = new HashSet<>();
+        for (String type = type1; type != null; type = getSuperName(type)) {
+            ancestors.add(type);
+        }
+        for (String type = type2; type != null; type = getSuperName(type)) {
+            if (ancestors.contains(type)) { return type; }
+        }
+        return OBJECT;
+    }
+
+    /**
+     * @return the super class of the given type, or <code>null</code> for interfaces, <code>java/lang/Object</code>
+     * and types we cannot resolve.
+     */
+    private String getSuperName(String type) {
+        ClassNode node = classes.apply(type);
+        if (node != null) {
+            return (node.access & Opcodes.ACC_INTERFACE) != 0 ? null : node.superName;
+        }
+        try {
+            ClassLoader loader = HierarchyClassWriter.class.getClassLoader();
+            Class<?> superclass = Class.forName(type.replace('/', '.'), false, loader).getSuperclass();
+            return superclass == null ? null : Type.getInternalName(superclass);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package at.yawk.patchtools.editor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Build step that precompiles the {@link KeywordHighlighter} automata into the class output directory, so the editor
+ * does not have to build them on startup.
+ *
+ * @author yawkat
+ */
+public class HighlighterCompiler {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: HighlighterCompiler <class output directory>");
+            System.exit(1);
+        }
+        Path directory = Paths.get(args[0])
+                .resolve(KeywordHighlighter.class.getPackage().getName().replace('.', '/'));
+        Files.createDirectories(directory);
+
+        compile(KeywordHighlighter.JAVA, directory);
+        compile(KeywordHighlighter.PATCH, directory);
+    }
+
+    private static void compile(KeywordHighlighter highlighter, Path directory) throws IOException {
+        Path target = directory.resolve(highlighter.getAutomatonResource());
+        System.out.println("Compiling " + target);
+        try (OutputStream out = Files.newOutputStream(target)) {
+            highlighter.compileAutomaton().write(out, highlighter.getFingerprint());
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package at.yawk.patchtools.editor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.PlainTextChange;
+import org.fxmisc.richtext.StyleSpansBuilder;
+import org.fxmisc.richtext.TwoDimensional;
+
+/**
+ * Keeps the style spans of a {@link CodeArea} up to date by re-lexing only the paragraphs touched by an edit.
+ *
+ * For every paragraph we remember whether lexing the text before it ever looked at its characters. If it did not,
+ * the paragraph starts on a clean token boundary and can be lexed on its own. Re-lexing starts at the last clean
+ * paragraph before an edit and stops at the first paragraph after it that was clean both before and after the
+ * edit, so multi-line tokens like block comments are handled without lexing the whole document.
+ *
+ * @author yawkat
+ */
+class IncrementalHighlighter {
+    private final KeywordHighlighter highlighter;
+    private final CodeArea area;
+
+    /**
+     * Per-paragraph flag: <code>true</code> if the paragraph can be lexed independently of the text before it.
+     */
+    private final List<Boolean> independent = new ArrayList<>();
+
+    /**
+     * Paragraph range (inclusive) that changed since the last highlight, <code>dirtyFrom == -1</code> if none.
+     */
+    private int dirtyFrom = -1;
+    private int dirtyTo = -1;
+
+    IncrementalHighlighter(KeywordHighlighter highlighter, CodeArea area) {
+        this.highlighter = highlighter;
+        this.area = area;
+    }
+
+    void attach() {
+        int paragraphs = area.getParagraphs().size();
+        independent.addAll(Collections.nCopies(paragraphs, false));
+        if (area.getLength() > 0) {
+            dirtyFrom = 0;
+            dirtyTo = paragraphs - 1;
+            highlight();
+        }
+
+        area.plainTextChanges().subscribe(this::onChange);
+        area.plainTextChanges()
+                .successionEnds(Duration.ofMillis(20))
+                .subscribe(c -> highlight());
+    }
+
+    private void onChange(PlainTextChange change) {
+        int paragraph = area.offsetToPosition(change.getPosition(), TwoDimensional.Bias.Forward).getMajor();
+        int removed = lineBreaks(change.getRemoved());
+        int inserted = lineBreaks(change.getInserted());
+
+        independent.subList(paragraph + 1, paragraph + 1 + removed).clear();
+        independent.addAll(paragraph + 1, Collections.nCopies(inserted, false));
+
+        if (dirtyFrom == -1) {
+            dirtyFrom = paragraph;
+            dirtyTo = paragraph + inserted;
+        } else {
+            dirtyFrom = shift(dirtyFrom, paragraph, removed, inserted, paragraph);
+            dirtyTo = shift(dirtyTo, paragraph, removed, inserted, paragraph + inserted);
+            dirtyFrom = Math.min(dirtyFrom, paragraph);
+            dirtyTo = Math.max(dirtyTo, paragraph + inserted);
+        }
+    }
+
+    /**
+     * Map a paragraph index from before a change to after it. Indices inside the replaced range map to
+     * <code>replaced</code>.
+     */
+    private static int shift(int index, int paragraph, int removed, int inserted, int replaced) {
+        if (index > paragraph + removed) {
+            return index + inserted - removed;
+        } else if (index > paragraph) {
+            return replaced;
+        } else {
+            return index;
+        }
+    }
+
+    private static int lineBreaks(String s) {
+        int count = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == '\n') { count++; }
+        }
+        return count;
+    }
+
+    private void highlight() {
+        if (dirtyFrom == -1) { return; }
+        try (PipelineStage.Timer ignored = PipelineStage.HIGHLIGHT.start(highlighter.getName())) {
+            highlightDirty();
+        }
+    }
+
+    private void highlightDirty() {
+        int paragraphs = area.getParagraphs().size();
+        int to = Math.min(dirtyTo, paragraphs - 1);
+        int first = Math.min(dirtyFrom, to);
+        dirtyFrom = dirtyTo = -1;
+
+        while (first > 0 && !independent.get(first)) {
+            first--;
+        }
+
+        Window window = new Window(first, paragraphs);
+        KeywordHighlighter.Lexer lexer = highlighter.newLexer();
+        StyleSpansBuilder<Collection<String>> spans = new StyleSpansBuilder<>();
+        int unstyled = 0;
+        int pos = 0;
+        int paragraph = first;
+        while (true) {
+            int paragraphEnd = window.end(paragraph);
+            while (pos < paragraphEnd) {
+                if (lexer.next(window, pos)) {
+                    if (unstyled > 0) {
+                        spans.add(KeywordHighlighter.DEFAULT_STYLE, unstyled);
+                        unstyled = 0;
+                    }
+                    spans.add(lexer.style, lexer.end - pos);
+                    pos = lexer.end;
+                } else {
+                    unstyled++;
+                    pos++;
+                }
+            }
+            if (paragraph == paragraphs - 1) { break; }
+
+            paragraph++;
+            boolean clean = pos == paragraphEnd && lexer.readEnd < paragraphEnd;
+            boolean wasClean = independent.set(paragraph, clean);
+            if (paragraph > to && clean && wasClean) { break; }
+        }
+        if (pos == 0) { return; }
+        spans.add(KeywordHighlighter.DEFAULT_STYLE, unstyled);
+
+        area.setStyleSpans(area.position(first, 0).toOffset(), spans.create());
+    }
+
+    /**
+     * Lazily loaded text of the paragraphs starting at a given one, joined by line breaks.
+     */
+    private class Window implements KeywordHighlighter.Text {
+        private final StringBuilder text = new StringBuilder();
+        private final int first;
+        private final int paragraphs;
+        /**
+         * Window index just after each loaded paragraph, including its line break.
+         */
+        private int[] ends = new int[16];
+        private int loaded;
+
+        Window(int first, int paragraphs) {
+            this.first = first;
+            this.paragraphs = paragraphs;
+            this.loaded = first;
+        }
+
+        private boolean load() {
+            if (loaded >= paragraphs) { return false; }
+            text.append(area.getParagraph(loaded).toString());
+            if (loaded + 1 < paragraphs) { text.append('\n'); }
+            if (loaded - first == ends.length) { ends = Arrays.copyOf(ends, ends.length * 2); }
+            ends[loaded - first] = text.length();
+            loaded++;
+            return true;
+        }
+
+        int end(int paragraph) {
+            while (loaded <= paragraph) {
+                load();
+            }
+            return ends[paragraph - first];
+        }
+
+        @Override
+        public int charAt(int index) {
+            while (index >= text.length()) {
+                if (!load()) { return -1; }
+            }
+            return text.charAt(index);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package at.yawk.patchtools.editor;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import uk.co.thinkofdeath.patchtools.wrappers.ClassSet;
+
+/**
+ * Applies a single-class patch and, once the user edits it, resumes from a kept state: when an evaluation shows that
+ * the leading member blocks are unchanged since the last one, the class patched with only those blocks is kept as a
+ * checkpoint, and later evaluations apply just the blocks after the newest checkpoint before their first change.
+ * Evaluations without a usable checkpoint, like the first one for a class, apply the patch in one go.
+ *
+ * Blocks are applied as the full patch text with every other block blanked out, so line numbers in errors match the
+ * editor. Patches that patchtools needs to see as a whole, those with several classes, with <code>~</code> names
+ * shared between blocks or with a <code>~</code> name in the class header, are always applied in one go.
+ *
+ * @author yawkat
+ */
+class IncrementalPatcher {
+    /**
+     * Upper bound for the number of checkpoints we keep.
+     */
+    private static final int MAX_CHECKPOINTS = 4;
+    /**
+     * Approximate memory the checkpoints of one patcher may retain, in bytes.
+     */
+    private static final long CHECKPOINT_BUDGET = 32L << 20;
+
+    private final Function<ClassNode, ClassSet> classSets;
+
+    private ClassSnapshot original;
+    /**
+     * Number of checkpoints {@link #original} fits in the budget with.
+     */
+    private int maxCheckpoints;
+    private Blocks blocks;
+    /**
+     * Patched classes, <code>checkpoints.get(i)</code> is the result of applying blocks
+     * <code>[0, checkpointEnds.get(i))</code>, ascending. These are never modified.
+     */
+    private final List<ClassNode> checkpoints = new ArrayList<>();
+    private final List<Integer> checkpointEnds = new ArrayList<>();
+
+    /**
+     * @param classSets creates the class set that a patch is applied to, containing the given class
+     */
+    IncrementalPatcher(Function<ClassNode, ClassSet> classSets) {
+        this.classSets = classSets;
+    }
+
+    /**
+     * Apply a patch to the given class.
+     *
+     * @return the patched class.
+     */
+    synchronized ClassNode patchClass(ClassSnapshot original, String patch) {
+        Blocks blocks = Blocks.parse(patch);
+        Blocks previous = this.blocks;
+        this.blocks = blocks;
+        if (original != this.original) {
+            this.original = original;
+            // a parsed class takes a few times the size of its class file
+            maxCheckpoints = (int) Math.min(MAX_CHECKPOINTS, CHECKPOINT_BUDGET / (64 + 8L * original.getSize()));
+            previous = null;
+        }
+        if (blocks == null || previous == null ||
+            !blocks.prefix.equals(previous.prefix) || !blocks.suffix.equals(previous.suffix)) {
+            checkpoints.clear();
+            checkpointEnds.clear();
+            return apply(original.newNode(), patch);
+        }
+
+        int unchanged = 0;
+        while (unchanged < blocks.members.size() && unchanged < previous.members.size() &&
+               blocks.members.get(unchanged).equals(previous.members.get(unchanged))) {
+            unchanged++;
+        }
+        while (!checkpointEnds.isEmpty() && checkpointEnds.get(checkpointEnds.size() - 1) > unchanged) {
+            checkpoints.remove(checkpoints.size() - 1);
+            checkpointEnds.remove(checkpointEnds.size() - 1);
+        }
+
+        ClassNode base = checkpoints.isEmpty() ? null : checkpoints.get(checkpoints.size() - 1);
+        int from = checkpointEnds.isEmpty() ? 0 : checkpointEnds.get(checkpointEnds.size() - 1);
+        if (unchanged > from && maxCheckpoints > 0) {
+            // blocks [0, unchanged) survived an edit, keep them for the next one
+            if (checkpoints.size() == maxCheckpoints) {
+                checkpoints.remove(checkpoints.size() - 1);
+                checkpointEnds.remove(checkpointEnds.size() - 1);
+            }
+            base = apply(base == null ? original.newNode() : copy(base), blocks.text(from, unchanged));
+            checkpoints.add(base);
+            checkpointEnds.add(unchanged);
+            from = unchanged;
+        }
+
+        if (base == null) {
+            return apply(original.newNode(), patch);
+        }
+        if (from == blocks.members.size()) {
+            return copy(base);
+        }
+        return apply(copy(base), blocks.text(from, blocks.members.size()));
+    }
+
+    /**
+     * @param node the class to patch, modified by this method
+     */
+    private ClassNode apply(ClassNode node, String patch) {
+        ClassSet classSet = classSets.apply(node);
+        Patching.apply(classSet, patch);
+        return classSet.getClassWrapper(node.name).getNode();
+    }
+
+    private static ClassNode copy(ClassNode node) {
+        ClassNode copy = new ClassNode(Opcodes.ASM5);
+        node.accept(copy);
+        return copy;
+    }
+
+    /**
+     * A patch for a single class, split into the blocks of its members.
+     */
+    static class Blocks {
+        private static final Pattern WILDCARD = Pattern.compile("~[\\w$]+");
+
+        private final String[] lines;
+        /**
+         * Everything up to and including the class header line.
+         */
+        private final String prefix;
+        /**
+         * Everything from the closing brace of the class.
+         */
+        private final String suffix;
+        private final List<String> members = new ArrayList<>();
+        /**
+         * Line ranges of the members, <code>{start, end}</code>.
+         */
+        private final List<int[]> memberLines = new ArrayList<>();
+
+        private Blocks(String[] lines, int header, int footer) {
+            this.lines = lines;
+            this.prefix = String.join("\n", Arrays.asList(lines).subList(0, header + 1));
+            this.suffix = String.join("\n", Arrays.asList(lines).subList(footer, lines.length));
+        }
+
+        /**
+         * @return the blocks or <code>null</code> if the patch has to be applied as a whole.
+         */
+        static Blocks parse(String patch) {
+            String[] lines = patch.split("\n", -1);
+            int header = -1;
+            int footer = -1;
+            int depth = 0;
+            int memberStart = -1;
+            boolean memberOpened = false;
+            List<int[]> memberLines = new ArrayList<>();
+            for (int i = 0; i < lines.length; i++) {
+                int delta = braceDelta(lines[i]);
+                if (delta == Integer.MIN_VALUE) { return null; }
+                boolean content = hasContent(lines[i]);
+                if (footer != -1) {
+                    // a second class
+                    if (content) { return null; }
+                } else if (header == -1) {
+                    if (delta == 1) {
+                        header = i;
+                    } else if (delta != 0) {
+                        return null;
+                    }
+                } else {
+                    if (memberStart == -1 && depth == 1 && delta == -1) {
+                        footer = i;
+                    } else {
+                        if (memberStart == -1 && content) {
+                            // member blocks start at their first line with content, comments stay with the previous
+                            // block (or the header)
+                            memberStart = i;
+                            memberOpened = false;
+                        }
+                        if (memberStart != -1) {
+                            if (depth + delta < 1) { return null; }
+                            memberOpened |= depth + delta > 1;
+                            String code = stripComment(lines[i]).trim();
+                            // a member ends with its method body or, for fields and other one-liners, a semicolon
+                            if (depth + delta == 1 && (memberOpened || code.endsWith(";") || code.endsWith("}"))) {
+                                memberLines.add(new int[]{ memberStart, i + 1 });
+                                memberStart = -1;
+                            }
+                        }
+                    }
+                }
+                depth += delta;
+                if (depth < 0) { return null; }
+            }
+            if (header == -1 || footer == -1 || memberStart != -1) { return null; }
+
+            for (int i = 0; i <= header; i++) {
+                // a ~ name in the header is bound together with the members, a block applied on its own could bind
+                // it differently
+                if (!wildcards(lines[i]).isEmpty()) { return null; }
+            }
+
+            Blocks blocks = new Blocks(lines, header, footer);
+            Set<String> seen = new HashSet<>();
+            for (int[] range : memberLines) {
+                StringBuilder member = new StringBuilder();
+                Set<String> wildcards = new HashSet<>();
+                for (int i = range[0]; i < range[1]; i++) {
+                    member.append(lines[i]).append('\n');
+                    wildcards.addAll(wildcards(lines[i]));
+                }
+                for (String wildcard : wildcards) {
+                    if (!seen.add(wildcard)) {
+                        // patchtools binds ~ names across the whole patch
+                        return null;
+                    }
+                }
+                blocks.members.add(member.toString());
+                blocks.memberLines.add(range);
+            }
+            return blocks;
+        }
+
+        /**
+         * @return the patch text with every member except <code>[from, to)</code> replaced by blank lines.
+         */
+        String text(int from, int to) {
+            String[] text = lines.clone();
+            for (int i = 0; i < memberLines.size(); i++) {
+                if (i >= from && i < to) { continue; }
+                int[] range = memberLines.get(i);
+                Arrays.fill(text, range[0], range[1], "");
+            }
+            return String.join("\n", text);
+        }
+
+        private static Set<String> wildcards(String line) {
+            Set<String> wildcards = new HashSet<>();
+            Matcher matcher = WILDCARD.matcher(stripComment(line));
+            while (matcher.find()) {
+                wildcards.add(matcher.group());
+            }
+            return wildcards;
+        }
+
+        private static boolean hasContent(String line) {
+            String trimmed = stripComment(line).trim();
+            return !trimmed.isEmpty();
+        }
+
+        private static String stripComment(String line) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("#")) { return ""; }
+            int comment = indexOfOutsideString(line, "//");
+            return comment == -1 ? line : line.substring(0, comment);
+        }
+
+        private static int indexOfOutsideString(String line, String needle) {
+            boolean string = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (string) {
+                    if (c == '\\') {
+                        i++;
+                    } else if (c == '"') {
+                        string = false;
+                    }
+                } else if (c == '"') {
+                    string = true;
+                } else if (line.startsWith(needle, i)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return opened minus closed braces of a line, or {@link Integer#MIN_VALUE} if the line has a block comment,
+         * which we do not track.
+         */
+        private static int braceDelta(String line) {
+            String code = stripComment(line);
+            if (indexOfOutsideString(code, "/*") != -1) { return Integer.MIN_VALUE; }
+            int delta = 0;
+            boolean string = false;
+            for (int i = 0; i < code.length(); i++) {
+                char c = code.charAt(i);
+                if (string) {
+                    if (c == '\\') {
+                        i++;
+                    } else if (c == '"') {
+                        string = false;
+                    }
+                } else if (c == '"') {
+                    string = true;
+                } else if (c == '{') {
+                    delta++;
+                } else if (c == '}') {
+                    delta--;
+                }
+            }
+            return delta;
+        }
+    }
+}
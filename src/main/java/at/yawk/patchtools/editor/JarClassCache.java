@@ -0,0 +1,124 @@
+package at.yawk.patchtools.editor;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import uk.co.thinkofdeath.patchtools.wrappers.ClassPathWrapper;
+import uk.co.thinkofdeath.patchtools.wrappers.ClassSet;
+import uk.co.thinkofdeath.patchtools.wrappers.ClassWrapper;
+
+/**
+ * Parsed classes of a jar, shared across patch evaluations. Classes are parsed on first lookup and evicted once the
+ * cache exceeds its budget. Since patching modifies class nodes, lookups return copies.
+ *
+ * @author yawkat
+ */
+class JarClassCache {
+    private final JarIndex jar;
+    private final LoadingCache<String, Parsed> classes;
+
+    /**
+     * @param budget approximate memory budget in bytes.
+     */
+    JarClassCache(JarIndex jar, long budget) {
+        this.jar = jar;
+        this.classes = CacheBuilder.newBuilder()
+                .maximumWeight(budget)
+                // a parsed class takes a few times the size of its class file
+                .<String, Parsed>weigher((k, v) -> 64 + 4 * v.size)
+                .build(new CacheLoader<String, Parsed>() {
+                    @Override
+                    public Parsed load(String key) throws Exception {
+                        return parse(key);
+                    }
+                });
+    }
+
+    private Parsed parse(String name) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = jar.readClass(name);
+        } catch (NoSuchFileException e) {
+            return new Parsed(null, 0);
+        }
+        ClassNode node = new ClassNode(Opcodes.ASM5);
+        new ClassReader(bytes).accept(node, 0);
+        return new Parsed(node, bytes.length);
+    }
+
+    /**
+     * @param name internal class name
+     * @return a copy of the class, or nothing if the jar does not contain it.
+     */
+    Optional<ClassNode> copy(String name) {
+        ClassNode node;
+        try {
+            node = classes.get(name).node;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new RuntimeException("Failed to load " + name, e.getCause());
+        }
+        if (node == null) { return Optional.empty(); }
+
+        ClassNode copy = new ClassNode(Opcodes.ASM5);
+        // visiting a method resets its labels, so one node must not be visited concurrently
+        synchronized (node) {
+            node.accept(copy);
+        }
+        return Optional.of(copy);
+    }
+
+    /**
+     * Create a class set that contains <code>node</code> and loads any other class of the jar when patchtools looks
+     * it up.
+     */
+    ClassSet newClassSet(ClassNode node) {
+        JarClassSet classSet = new JarClassSet(this);
+        classSet.loaded.add(node.name);
+        classSet.add(node);
+        return classSet;
+    }
+
+    private static class Parsed {
+        /**
+         * The parsed class, <code>null</code> if the jar does not contain it.
+         */
+        private final ClassNode node;
+        private final int size;
+
+        public Parsed(ClassNode node, int size) {
+            this.node = node;
+            this.size = size;
+        }
+    }
+
+    private static class JarClassSet extends ClassSet {
+        private final JarClassCache cache;
+        /**
+         * Classes that were already added to this set or that the jar does not contain.
+         */
+        private final Set<String> loaded = new HashSet<>();
+
+        public JarClassSet(JarClassCache cache) {
+            super(new ClassPathWrapper());
+            this.cache = cache;
+        }
+
+        @Override
+        public ClassWrapper getClassWrapper(String name) {
+            if (loaded.add(name)) {
+                cache.copy(name).ifPresent(this::add);
+            }
+            return super.getClassWrapper(name);
+        }
+    }
+}
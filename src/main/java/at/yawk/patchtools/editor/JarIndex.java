@@ -0,0 +1,242 @@
+package at.yawk.patchtools.editor;
+
+import com.google.common.io.ByteStreams;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Open jar file with a searchable index of its classes. The index is built from the central directory in the
+ * background, classes are read on demand through a single {@link ZipFile} handle that stays open until
+ * {@link #close()}.
+ *
+ * @author yawkat
+ */
+class JarIndex implements Closeable {
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int END_SIZE = 22;
+    private static final int MAX_COMMENT = 0xffff;
+
+    private final Path path;
+    private final ZipFile zip;
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+    private volatile ClassNames classNames = new ClassNames(new String[0], new String[0]);
+
+    private JarIndex(Path path) throws IOException {
+        this.path = path;
+        this.zip = new ZipFile(path.toFile());
+        Thread thread = new DaemonThreadFactory().newThread(() -> {
+            try {
+                build();
+                ready.complete(null);
+            } catch (Throwable t) {
+                ready.completeExceptionally(t);
+            }
+        });
+        thread.setName("Jar index " + path.getFileName());
+        thread.start();
+    }
+
+    /**
+     * Open a jar and start indexing it in the background.
+     */
+    static JarIndex open(Path path) throws IOException {
+        return new JarIndex(path);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return a future that completes once {@link #search(String, int)} sees all classes.
+     */
+    CompletableFuture<Void> getReady() {
+        return ready;
+    }
+
+    private void build() {
+        List<String> entryNames;
+        try {
+            entryNames = readCentralDirectory();
+        } catch (IOException | RuntimeException e) {
+            entryNames = null;
+        }
+        if (entryNames == null) {
+            // zip64 or something we do not understand, let the JDK handle it
+            entryNames = new ArrayList<>();
+            for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements(); ) {
+                entryNames.add(entries.nextElement().getName());
+            }
+        }
+
+        List<String> classes = new ArrayList<>();
+        for (String entryName : entryNames) {
+            if (entryName.endsWith(".class")) {
+                classes.add(entryName.substring(0, entryName.length() - 6).replace('/', '.'));
+            }
+        }
+        Collections.sort(classes, Comparator.comparing(name -> name.toLowerCase(Locale.ROOT)));
+        String[] keys = new String[classes.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = classes.get(i).toLowerCase(Locale.ROOT);
+        }
+        classNames = new ClassNames(classes.toArray(new String[classes.size()]), keys);
+    }
+
+    /**
+     * Read the entry names from the central directory through a memory mapping of the end of the file.
+     *
+     * @return the entry names or <code>null</code> if this is not a plain (non-zip64) zip file.
+     */
+    private List<String> readCentralDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long tailStart = Math.max(0, size - END_SIZE - MAX_COMMENT);
+            MappedByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, tailStart, size - tailStart);
+            tail.order(ByteOrder.LITTLE_ENDIAN);
+
+            int end = -1;
+            for (int i = tail.limit() - END_SIZE; i >= 0; i--) {
+                if (tail.getInt(i) == END_SIGNATURE) {
+                    end = i;
+                    break;
+                }
+            }
+            if (end == -1) { return null; }
+
+            int count = tail.getShort(end + 10) & 0xffff;
+            long directorySize = tail.getInt(end + 12) & 0xffffffffL;
+            long directoryOffset = tail.getInt(end + 16) & 0xffffffffL;
+            if (count == 0xffff || directorySize == 0xffffffffL || directoryOffset == 0xffffffffL ||
+                directoryOffset + directorySize > size) {
+                return null;
+            }
+
+            MappedByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, directoryOffset, directorySize);
+            directory.order(ByteOrder.LITTLE_ENDIAN);
+            List<String> entryNames = new ArrayList<>(count);
+            byte[] nameBuffer = new byte[256];
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                if (directory.getInt(position) != CENTRAL_SIGNATURE) { return null; }
+                int nameLength = directory.getShort(position + 28) & 0xffff;
+                int extraLength = directory.getShort(position + 30) & 0xffff;
+                int commentLength = directory.getShort(position + 32) & 0xffff;
+                if (nameBuffer.length < nameLength) { nameBuffer = new byte[nameLength]; }
+                directory.position(position + 46);
+                directory.get(nameBuffer, 0, nameLength);
+                entryNames.add(new String(nameBuffer, 0, nameLength, StandardCharsets.UTF_8));
+                position += 46 + nameLength + extraLength + commentLength;
+            }
+            return entryNames;
+        }
+    }
+
+    /**
+     * @return all dotted class names indexed so far, sorted.
+     */
+    List<String> getClassNames() {
+        return Collections.unmodifiableList(Arrays.asList(classNames.names));
+    }
+
+    /**
+     * Find classes by name. Matches are ordered by quality: prefixes of the fully qualified name, then prefixes of the
+     * simple name, then names that contain the query characters in order (so <code>mctrl</code> finds
+     * <code>MainController</code>).
+     *
+     * @return at most <code>limit</code> dotted class names.
+     */
+    List<String> search(String query, int limit) {
+        String[] names = classNames.names;
+        String[] keys = classNames.keys;
+        String q = query.trim().replace('/', '.').toLowerCase(Locale.ROOT);
+
+        Set<String> result = new LinkedHashSet<>();
+        int from = Arrays.binarySearch(keys, q);
+        if (from < 0) { from = -from - 1; }
+        for (int i = from; i < keys.length && result.size() < limit && keys[i].startsWith(q); i++) {
+            result.add(names[i]);
+        }
+        if (result.size() >= limit || q.isEmpty()) { return new ArrayList<>(result); }
+
+        List<String> fuzzy = new ArrayList<>();
+        for (int i = 0; i < keys.length && result.size() < limit; i++) {
+            String key = keys[i];
+            if (key.startsWith(q, key.lastIndexOf('.') + 1)) {
+                result.add(names[i]);
+            } else if (fuzzy.size() < limit && isSubsequence(q, key)) {
+                fuzzy.add(names[i]);
+            }
+        }
+        for (int i = 0; i < fuzzy.size() && result.size() < limit; i++) {
+            result.add(fuzzy.get(i));
+        }
+        return new ArrayList<>(result);
+    }
+
+    private static boolean isSubsequence(String query, String key) {
+        int j = 0;
+        for (int i = 0; i < key.length() && j < query.length(); i++) {
+            if (key.charAt(i) == query.charAt(j)) { j++; }
+        }
+        return j == query.length();
+    }
+
+    /**
+     * Read a class file from this jar.
+     *
+     * @param className the dotted or internal class name, with or without <code>.class</code> suffix.
+     */
+    byte[] readClass(String className) throws IOException {
+        String entryName = toEntryName(className);
+        ZipEntry entry = zip.getEntry(entryName);
+        if (entry == null) {
+            throw new NoSuchFileException(path + "!/" + entryName);
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    static String toEntryName(String className) {
+        if (className.endsWith(".class")) {
+            className = className.substring(0, className.length() - 6);
+        }
+        return className.replace('.', '/') + ".class";
+    }
+
+    private static class ClassNames {
+        /**
+         * Dotted class names, sorted by their lower case form.
+         */
+        private final String[] names;
+        /**
+         * Lower case {@link #names}, same order.
+         */
+        private final String[] keys;
+
+        public ClassNames(String[] names, String[] keys) {
+            this.names = names;
+            this.keys = keys;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+}
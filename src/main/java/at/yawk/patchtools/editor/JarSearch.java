@@ -0,0 +1,138 @@
+package at.yawk.patchtools.editor;
+
+import java.util.function.Consumer;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import javafx.util.Duration;
+
+/**
+ * Window to find the classes of a jar that contain some tokens, backed by a {@link JarSearchIndex}. Results are
+ * refreshed while the index is still being built.
+ *
+ * @author yawkat
+ */
+class JarSearch {
+    private static final int MAX_RESULTS = 500;
+
+    private final JarSearchIndex index;
+    private final Consumer<String> open;
+    private final Stage stage = new Stage();
+    private final TextField query = new TextField();
+    private final ListView<String> results = new ListView<>();
+    private final Label status = new Label();
+    private final Timeline refresh;
+
+    /**
+     * @param open called with the dotted name of a class the user picked.
+     */
+    JarSearch(Window owner, JarSearchIndex index, Consumer<String> open) {
+        this.index = index;
+        this.open = open;
+
+        query.setPromptText("Identifiers, mnemonics, \"string constants\" or prefix*");
+        query.textProperty().addListener((observable, oldValue, newValue) -> update());
+        query.setOnKeyPressed(evt -> {
+            if (evt.getCode() == KeyCode.DOWN) {
+                results.requestFocus();
+                results.getSelectionModel().selectFirst();
+                evt.consume();
+            } else if (evt.getCode() == KeyCode.ENTER) {
+                results.getSelectionModel().selectFirst();
+                accept();
+            }
+        });
+        results.setOnKeyPressed(evt -> {
+            if (evt.getCode() == KeyCode.ENTER) { accept(); }
+        });
+        results.setOnMouseClicked(evt -> {
+            if (evt.getButton() == MouseButton.PRIMARY && evt.getClickCount() == 2) { accept(); }
+        });
+
+        VBox root = new VBox(5, query, results, status);
+        root.setPadding(new Insets(10));
+        VBox.setVgrow(results, Priority.ALWAYS);
+        Scene scene = new Scene(root, 500, 400);
+        scene.setOnKeyPressed(evt -> {
+            if (evt.getCode() == KeyCode.ESCAPE) { stage.close(); }
+        });
+
+        stage.initOwner(owner);
+        stage.setTitle("Search " + index.getJar().getPath().getFileName());
+        stage.setScene(scene);
+
+        refresh = new Timeline(new KeyFrame(Duration.millis(500), evt -> update()));
+        refresh.setCycleCount(Animation.INDEFINITE);
+        stage.setOnShown(evt -> refresh.play());
+        stage.setOnHidden(evt -> refresh.stop());
+    }
+
+    void show() {
+        stage.show();
+        stage.toFront();
+        query.requestFocus();
+        query.selectAll();
+        update();
+    }
+
+    private void update() {
+        if (index.isDone()) {
+            // one last update with the complete index
+            refresh.stop();
+        }
+        long start = System.nanoTime();
+        String selected = results.getSelectionModel().getSelectedItem();
+        results.getItems().setAll(index.search(query.getText(), MAX_RESULTS));
+        if (selected != null) {
+            results.getSelectionModel().select(selected);
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        StringBuilder text = new StringBuilder();
+        if (!query.getText().trim().isEmpty()) {
+            text.append(results.getItems().size() >= MAX_RESULTS ? "First " : "").append(results.getItems().size())
+                    .append(" matches in ").append(millis).append(" ms   ");
+        }
+        text.append(progress(index));
+        status.setText(text.toString());
+    }
+
+    /**
+     * @return a short description of how far the index is.
+     */
+    static String progress(JarSearchIndex index) {
+        int total = index.getTotal();
+        if (total == -1) { return "Listing classes\u2026"; }
+        StringBuilder text = new StringBuilder();
+        if (index.isDone()) {
+            text.append("Indexed ").append(total).append(" classes");
+        } else {
+            text.append("Indexing ").append(index.getProcessed()).append('/').append(total).append('\u2026');
+        }
+        if (index.getFailed() > 0) {
+            text.append(", ").append(index.getFailed()).append(" failed");
+        }
+        if (index.getBytecodeOnly() > 0) {
+            text.append(", ").append(index.getBytecodeOnly()).append(" by bytecode only");
+        }
+        return text.toString();
+    }
+
+    private void accept() {
+        String selected = results.getSelectionModel().getSelectedItem();
+        if (selected != null) {
+            open.accept(selected);
+        }
+    }
+}
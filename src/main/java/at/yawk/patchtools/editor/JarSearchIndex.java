@@ -0,0 +1,295 @@
+package at.yawk.patchtools.editor;
+
+import com.google.common.hash.HashCode;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * Full-text index over the bytecode and java views of every class in a jar. Classes are rendered in parallel on low
+ * priority background threads and become searchable as soon as each one is done.
+ *
+ * Indexed tokens are identifiers and qualified names (and their parts), string constants and, in the bytecode view,
+ * instruction mnemonics. Tokens are case-insensitive.
+ *
+ * @author yawkat
+ */
+class JarSearchIndex {
+    private final JarIndex jar;
+    /**
+     * Separate renderer so indexing does not evict the editor's cached methods.
+     */
+    private final CodeRenderer renderer = new CodeRenderer(4 << 20);
+    private final ExecutorService pool = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1), r -> {
+                Thread thread = new DaemonThreadFactory().newThread(r);
+                thread.setName("Jar search index");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+
+    /**
+     * Class names by class id.
+     */
+    private final List<String> classes = new ArrayList<>();
+    private final TreeMap<String, Postings> postings = new TreeMap<>();
+
+    private final AtomicInteger processed = new AtomicInteger();
+    /**
+     * Classes that could not be read or parsed and are not searchable.
+     */
+    private final AtomicInteger failed = new AtomicInteger();
+    /**
+     * Indexed classes Procyon could not decompile, searchable by their bytecode only.
+     */
+    private final AtomicInteger bytecodeOnly = new AtomicInteger();
+    private volatile int total = -1;
+
+    private JarSearchIndex(JarIndex jar) {
+        this.jar = jar;
+        renderer.setJar(jar);
+    }
+
+    /**
+     * Start indexing a jar in the background.
+     */
+    static JarSearchIndex start(JarIndex jar) {
+        JarSearchIndex index = new JarSearchIndex(jar);
+        jar.getReady().thenRun(() -> {
+            List<String> names = jar.getClassNames();
+            index.total = names.size();
+            for (String name : names) {
+                index.pool.execute(() -> index.index(name));
+            }
+            index.pool.shutdown();
+        });
+        return index;
+    }
+
+    JarIndex getJar() {
+        return jar;
+    }
+
+    /**
+     * @return the number of classes that were indexed or failed to load so far.
+     */
+    int getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * @return the number of classes to index or <code>-1</code> if the jar is still being listed.
+     */
+    int getTotal() {
+        return total;
+    }
+
+    int getFailed() {
+        return failed.get();
+    }
+
+    int getBytecodeOnly() {
+        return bytecodeOnly.get();
+    }
+
+    boolean isDone() {
+        return total != -1 && processed.get() >= total;
+    }
+
+    private void index(String className) {
+        try {
+            byte[] bytes = jar.readClass(className);
+            ClassNode node = new ClassSnapshot(bytes).newNode();
+            Set<String> tokens = new HashSet<>();
+            Map<String, HashCode> fingerprints = MethodFingerprint.ofMethods(node);
+            tokenize(renderer.markup(node, false, fingerprints), true, tokens);
+            try {
+                tokenize(renderer.decompile(bytes, fingerprints, EvaluationScheduler.Cancellation.NEVER), false,
+                         tokens);
+            } catch (Throwable t) {
+                // the bytecode view is still worth searching
+                bytecodeOnly.incrementAndGet();
+            }
+            add(className, tokens);
+        } catch (Throwable t) {
+            failed.incrementAndGet();
+        } finally {
+            processed.incrementAndGet();
+        }
+    }
+
+    private synchronized void add(String className, Set<String> tokens) {
+        int id = classes.size();
+        classes.add(className);
+        for (String token : tokens) {
+            Postings list = postings.get(token);
+            if (list == null) {
+                list = new Postings();
+                postings.put(token, list);
+            }
+            list.add(id);
+        }
+    }
+
+    /**
+     * Split a view into lower case tokens.
+     *
+     * @param byteCode whether this is a bytecode view, where <code>-</code> is part of mnemonics
+     */
+    static void tokenize(String text, boolean byteCode, Set<String> tokens) {
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                StringBuilder constant = new StringBuilder();
+                int j = i + 1;
+                for (; j < text.length() && text.charAt(j) != '"' && text.charAt(j) != '\n'; j++) {
+                    if (text.charAt(j) == '\\' && j + 1 < text.length()) { j++; }
+                    constant.append(text.charAt(j));
+                }
+                if (constant.length() > 0) {
+                    tokens.add(constant.toString().toLowerCase(Locale.ROOT));
+                }
+                // also index the words inside the constant
+                tokenize(constant.toString(), false, tokens);
+                i = j + 1;
+            } else if (isTokenPart(c, byteCode)) {
+                int start = i;
+                while (i < text.length() && isTokenPart(text.charAt(i), byteCode)) { i++; }
+                addName(text.substring(start, i), tokens);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static boolean isTokenPart(char c, boolean byteCode) {
+        return Character.isJavaIdentifierPart(c) || c == '.' || c == '/' || (byteCode && c == '-');
+    }
+
+    /**
+     * Add a possibly qualified name and its parts.
+     */
+    private static void addName(String name, Set<String> tokens) {
+        String normalized = name.replace('/', '.').toLowerCase(Locale.ROOT);
+        int start = 0;
+        for (int i = 0; i <= normalized.length(); i++) {
+            if (i == normalized.length() || normalized.charAt(i) == '.') {
+                if (i > start) {
+                    tokens.add(normalized.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        String trimmed = trimDots(normalized);
+        if (trimmed.indexOf('.') != -1) {
+            tokens.add(trimmed);
+        }
+    }
+
+    private static String trimDots(String s) {
+        int start = 0;
+        int end = s.length();
+        while (start < end && s.charAt(start) == '.') { start++; }
+        while (end > start && s.charAt(end - 1) == '.') { end--; }
+        return s.substring(start, end);
+    }
+
+    /**
+     * Find the classes that contain all terms of a query. Terms are separated by whitespace and may end with
+     * <code>*</code> to match any token with that prefix; a term in double quotes matches a whole string constant.
+     *
+     * @return at most <code>limit</code> class names, sorted.
+     */
+    synchronized List<String> search(String query, int limit) {
+        List<String> terms = parseQuery(query);
+        if (terms.isEmpty()) { return Collections.emptyList(); }
+
+        int[] result = null;
+        for (String term : terms) {
+            int[] matches;
+            if (term.endsWith("*") && term.length() > 1) {
+                String prefix = term.substring(0, term.length() - 1);
+                BitSet union = new BitSet(classes.size());
+                for (Postings list : postings.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+                    for (int i = 0; i < list.size; i++) {
+                        union.set(list.ids[i]);
+                    }
+                }
+                matches = union.stream().toArray();
+            } else {
+                Postings list = postings.get(term);
+                matches = list == null ? new int[0] : Arrays.copyOf(list.ids, list.size);
+            }
+            result = result == null ? matches : intersect(result, matches);
+            if (result.length == 0) { break; }
+        }
+
+        List<String> names = new ArrayList<>(Math.min(result.length, limit));
+        for (int id : result) {
+            names.add(classes.get(id));
+        }
+        Collections.sort(names);
+        return names.size() > limit ? new ArrayList<>(names.subList(0, limit)) : names;
+    }
+
+    private static List<String> parseQuery(String query) {
+        List<String> terms = new ArrayList<>();
+        String lower = query.toLowerCase(Locale.ROOT);
+        int i = 0;
+        while (i < lower.length()) {
+            char c = lower.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                int end = lower.indexOf('"', i + 1);
+                if (end == -1) { end = lower.length(); }
+                if (end > i + 1) {
+                    terms.add(lower.substring(i + 1, end));
+                }
+                i = end + 1;
+            } else {
+                int start = i;
+                while (i < lower.length() && !Character.isWhitespace(lower.charAt(i))) { i++; }
+                terms.add(lower.substring(start, i).replace('/', '.'));
+            }
+        }
+        return terms;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Ascending class ids of one token.
+     */
+    private static class Postings {
+        private int[] ids = new int[2];
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+}
@@ -1,16 +1,20 @@
 package at.yawk.patchtools.editor;
 
-import dk.brics.automaton.AutomatonMatcher;
-import dk.brics.automaton.RegExp;
-import dk.brics.automaton.RunAutomaton;
-import java.time.Duration;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
-import javafx.concurrent.Task;
-import org.fxmisc.richtext.*;
-import org.reactfx.EventStream;
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.LineNumberFactory;
+import org.fxmisc.richtext.StyleSpans;
+import org.fxmisc.richtext.StyleSpansBuilder;
 import uk.co.thinkofdeath.patchtools.instruction.Instruction;
 
 /**
@@ -18,6 +22,7 @@ import uk.co.thinkofdeath.patchtools.instruction.Instruction;
  */
 public class KeywordHighlighter {
     public static final KeywordHighlighter JAVA = new KeywordHighlighter(
+            "java",
             keywords(
                     "keyword",
 
@@ -36,9 +41,10 @@ public class KeywordHighlighter {
             keywords("paren", "[\\(\\)]"),
             keywords("brace", "[\\{\\}]"),
             keywords("bracket", "[\\[\\]]"),
-            keywords("string", "\\\"([^\"]*(\\\\\\\")?)*\\\"", "'(\\\\[\"']|.)'")
+            keywords("string", "\\\"([^\"\n]*(\\\\\\\")?)*\\\"", "'(\\\\[\"']|[^\n])'")
     );
     public static final KeywordHighlighter PATCH = new KeywordHighlighter(
+            "patch",
             keywords(
                     "keyword",
 
@@ -72,30 +78,82 @@ public class KeywordHighlighter {
             keywords("paren", "[\\(\\)]"),
             keywords("brace", "[\\{\\}]"),
             keywords("bracket", "[\\[\\]]"),
-            keywords("string", "\\\"([^\"]*(\\\\\\\")?)*\\\"", "'(\\\\[\"']|.)'"),
-            keywords("comment", "//[^\n]*", "\\#[^\n]*", "/\\*(\\*?[^/*]/?)*\\*/"),
-            // patchtools-cli actions
+            keywords("string", "\\\"([^\"\n]*(\\\\\\\")?)*\\\"", "'(\\\\[\"']|[^\n])'"),
+            // patchtools-cli actions, before comments so they win ties
             keywords("action", "\\#(include|exclude) [^\n]+", "//(include|exclude) [^\n]+"),
+            keywords("comment", "//[^\n]*", "\\#[^\n]*", "/\\*(\\*?[^/*]/?)*\\*/"),
             keywords("match", "\\~")
     );
 
+    static final Collection<String> DEFAULT_STYLE = Collections.singleton("default");
+
+    private final String name;
     private final List<Keyword> keywords;
+    private final Supplier<TokenDfa> automaton = Suppliers.memoize(this::loadAutomaton);
 
     private static List<Keyword> keywords(String clazz, @org.intellij.lang.annotations.RegExp String... keywords) {
-        return Arrays.stream(keywords).map(k -> {
-            System.out.println("Parsing regex " + k);
-            return new Keyword(new RunAutomaton(new RegExp(k).toAutomaton()), clazz);
-        }).collect(Collectors.toList());
+        return Arrays.stream(keywords).map(k -> new Keyword(k, clazz)).collect(Collectors.toList());
     }
 
     @SafeVarargs
-    private KeywordHighlighter(List<Keyword>... keywords) {
+    private KeywordHighlighter(String name, List<Keyword>... keywords) {
+        this.name = name;
         this.keywords = Arrays.stream(keywords).flatMap(Collection::stream).collect(Collectors.toList());
     }
 
-    public void decorate(CodeArea codeArea) {
-        Executor pool = Executors.newSingleThreadExecutor(new DaemonThreadFactory());
+    /**
+     * Name of the resource the precompiled automaton of this highlighter is stored in.
+     */
+    String getAutomatonResource() {
+        return name + ".dfa";
+    }
+
+    String getName() {
+        return name;
+    }
+
+    List<String> getExpressions() {
+        return keywords.stream().map(k -> k.regex).collect(Collectors.toList());
+    }
+
+    /**
+     * Hash of the keyword expressions, used to detect a precompiled automaton that does not match the current
+     * patchtools instruction set.
+     */
+    String getFingerprint() {
+        Hasher hasher = Hashing.sha1().newHasher();
+        for (String expression : getExpressions()) {
+            hasher.putString(expression, StandardCharsets.UTF_8).putByte((byte) 0);
+        }
+        return hasher.hash().toString();
+    }
+
+    TokenDfa compileAutomaton() {
+        return TokenDfa.compile(getExpressions());
+    }
+
+    /**
+     * Load the precompiled automaton, or compile one if there is none for the current expressions.
+     *
+     * @throws UncheckedIOException if the precompiled automaton is there but cannot be read, which means the build
+     *                              that wrote it is broken
+     */
+    private TokenDfa loadAutomaton() {
+        String fingerprint = getFingerprint();
+        try (InputStream in = KeywordHighlighter.class.getResourceAsStream(getAutomatonResource())) {
+            if (in != null) {
+                TokenDfa automaton = TokenDfa.read(in, fingerprint);
+                if (automaton != null) {
+                    return automaton;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + getAutomatonResource(), e);
+        }
+        return compileAutomaton();
+    }
 
+    public void decorate(CodeArea codeArea) {
         String extStyle = KeywordHighlighter.class.getResource("style.css").toExternalForm();
         codeArea.setParagraphGraphicFactory(LineNumberFactory.get(
                 codeArea,
@@ -103,78 +161,106 @@ public class KeywordHighlighter {
                 extStyle
         ));
 
-        EventStream<PlainTextChange> textChanges = codeArea.plainTextChanges();
-        textChanges
-                .successionEnds(Duration.ofMillis(20))
-                .supplyTask(() -> new Task<StyleSpans<Collection<String>>>() {
-                    { pool.execute(this); }
-
-                    @Override
-                    protected StyleSpans<Collection<String>> call() throws Exception {
-                        return findAndSortHighlights(codeArea.getText());
-                    }
-                })
-                .awaitLatest(textChanges)
-                .subscribe(h -> codeArea.setStyleSpans(0, h));
+        new IncrementalHighlighter(this, codeArea).attach();
     }
 
-    private StyleSpans<Collection<String>> findAndSortHighlights(String text) {
-        List<StyleChange> changes = new ArrayList<>(Arrays.asList(new StyleChange(0, "default", true)));
-        for (Keyword keyword : keywords) {
-            AutomatonMatcher matcher = keyword.matcher.newMatcher(text);
-            while (matcher.find()) {
-                changes.add(new StyleChange(matcher.start(), keyword.clazz, true));
-                changes.add(new StyleChange(matcher.end(), keyword.clazz, false));
-            }
-        }
-        Collections.sort(changes, Comparator.comparingInt(c -> c.index));
+    Lexer newLexer() {
+        return new Lexer();
+    }
 
+    StyleSpans<Collection<String>> findAndSortHighlights(String text) {
+        Text source = i -> i < text.length() ? text.charAt(i) : -1;
+        Lexer lexer = newLexer();
         StyleSpansBuilder<Collection<String>> builder = new StyleSpansBuilder<>();
+        int unstyled = 0;
         int i = 0;
-        int prevIndex = 0;
-        List<String> classes = new ArrayList<>();
-        while (i < changes.size()) {
-            int index = changes.get(i).index;
-            builder.add(new HashSet<>(classes), index - prevIndex);
-            for (; i < changes.size(); i++) {
-                StyleChange change = changes.get(i);
-                if (change.index != index) {
-                    break;
+        while (i < text.length()) {
+            if (lexer.next(source, i)) {
+                if (unstyled > 0) {
+                    builder.add(DEFAULT_STYLE, unstyled);
+                    unstyled = 0;
                 }
-                change.apply(classes);
+                builder.add(lexer.style, lexer.end - i);
+                i = lexer.end;
+            } else {
+                unstyled++;
+                i++;
             }
-            prevIndex = index;
         }
+        builder.add(DEFAULT_STYLE, unstyled);
         return builder.create();
     }
 
-    private static class Keyword {
-        private final RunAutomaton matcher;
-        private final String clazz;
-
-        public Keyword(RunAutomaton matcher, String clazz) {
-            this.matcher = matcher;
-            this.clazz = clazz;
-        }
+    /**
+     * Character source for the {@link Lexer}.
+     */
+    interface Text {
+        /**
+         * @return the character at the given index or <code>-1</code> if the index is past the end of the text.
+         */
+        int charAt(int index);
     }
 
-    private static class StyleChange {
-        private final int index;
-        private final String clazz;
-        private final boolean add;
+    /**
+     * Longest-match tokenizer over all keywords of this highlighter. Ties go to the keyword declared first. Every
+     * character is stepped through the combined automaton once per token attempt, independent of the keyword count.
+     */
+    class Lexer {
+        private final TokenDfa automaton = KeywordHighlighter.this.automaton.get();
 
-        public StyleChange(int index, String clazz, boolean add) {
-            this.index = index;
-            this.clazz = clazz;
-            this.add = add;
-        }
+        /**
+         * End of the last token found by {@link #next(Text, int)}.
+         */
+        int end;
+        /**
+         * Style of the last token found by {@link #next(Text, int)}.
+         */
+        Collection<String> style;
+        /**
+         * Highest index any scan so far has looked at, <code>-1</code> initially. Text after this index cannot have
+         * influenced the tokens found so far.
+         */
+        int readEnd = -1;
 
-        private void apply(Collection<String> classes) {
-            if (add) {
-                classes.add(clazz);
-            } else {
-                classes.remove(clazz);
+        /**
+         * Try to match a token at the given index.
+         *
+         * @return <code>true</code> if a token was found, <code>false</code> if the character at the given index is
+         * not part of any token.
+         */
+        boolean next(Text text, int start) {
+            int best = -1;
+            int bestEnd = start;
+            int state = automaton.getInitialState();
+            int i = start;
+            int c;
+            while ((c = text.charAt(i)) != -1) {
+                if (i > readEnd) { readEnd = i; }
+                state = automaton.step(state, (char) c);
+                if (state == -1) { break; }
+                i++;
+                int tag = automaton.getTag(state);
+                if (tag != -1) {
+                    best = tag;
+                    bestEnd = i;
+                }
             }
+            if (best == -1) {
+                return false;
+            }
+            end = bestEnd;
+            style = keywords.get(best).style;
+            return true;
+        }
+    }
+
+    private static class Keyword {
+        private final String regex;
+        private final Collection<String> style;
+
+        public Keyword(String regex, String clazz) {
+            this.regex = regex;
+            this.style = ImmutableSet.of("default", clazz);
         }
     }
 }
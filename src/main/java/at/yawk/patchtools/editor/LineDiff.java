@@ -0,0 +1,152 @@
+package at.yawk.patchtools.editor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Line-level diff (Myers' O(ND) algorithm) between two texts.
+ *
+ * @author yawkat
+ */
+class LineDiff {
+    /**
+     * Maximum number of line edits we search for. Beyond that the changed region is reported as a single hunk, which
+     * is what a completely different text needs anyway.
+     */
+    private static final int MAX_EDITS = 512;
+
+    private LineDiff() {}
+
+    /**
+     * Replacement of lines <code>[fromStart, fromEnd)</code> of the old text by lines <code>[toStart, toEnd)</code>
+     * of the new text.
+     */
+    static class Hunk {
+        final int fromStart;
+        final int fromEnd;
+        final int toStart;
+        final int toEnd;
+
+        Hunk(int fromStart, int fromEnd, int toStart, int toEnd) {
+            this.fromStart = fromStart;
+            this.fromEnd = fromEnd;
+            this.toStart = toStart;
+            this.toEnd = toEnd;
+        }
+    }
+
+    /**
+     * @return the hunks turning <code>from</code> into <code>to</code>, in ascending order.
+     */
+    static List<Hunk> diff(List<String> from, List<String> to) {
+        int prefix = 0;
+        while (prefix < from.size() && prefix < to.size() && from.get(prefix).equals(to.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < from.size() - prefix && suffix < to.size() - prefix &&
+               from.get(from.size() - 1 - suffix).equals(to.get(to.size() - 1 - suffix))) {
+            suffix++;
+        }
+        List<String> a = from.subList(prefix, from.size() - suffix);
+        List<String> b = to.subList(prefix, to.size() - suffix);
+        if (a.isEmpty() && b.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Hunk> hunks = myers(a, b, prefix);
+        if (hunks == null) {
+            hunks = Collections.singletonList(new Hunk(prefix, prefix + a.size(), prefix, prefix + b.size()));
+        }
+        return hunks;
+    }
+
+    /**
+     * @return the hunks or <code>null</code> if there are more than {@link #MAX_EDITS} line edits.
+     */
+    private static List<Hunk> myers(List<String> a, List<String> b, int offset) {
+        int n = a.size();
+        int m = b.size();
+        int max = Math.min(n + m, MAX_EDITS);
+        int center = max + 1;
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= max; d++) {
+            trace.add(v.clone());
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[center + k - 1] < v[center + k + 1])) {
+                    x = v[center + k + 1];
+                } else {
+                    x = v[center + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a.get(x).equals(b.get(y))) {
+                    x++;
+                    y++;
+                }
+                v[center + k] = x;
+                if (x >= n && y >= m) {
+                    return backtrack(trace, center, n, m, offset);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<Hunk> backtrack(List<int[]> trace, int center, int n, int m, int offset) {
+        // single line edits from the back: {x, y, 0} deletes a[x], {x, y, 1} inserts b[y] before a[x]
+        List<int[]> edits = new ArrayList<>();
+        int x = n;
+        int y = m;
+        for (int d = trace.size() - 1; d > 0; d--) {
+            int[] v = trace.get(d);
+            int k = x - y;
+            int previousK;
+            if (k == -d || (k != d && v[center + k - 1] < v[center + k + 1])) {
+                previousK = k + 1;
+            } else {
+                previousK = k - 1;
+            }
+            int previousX = v[center + previousK];
+            int previousY = previousX - previousK;
+            while (x > previousX && y > previousY) {
+                x--;
+                y--;
+            }
+            if (x == previousX) {
+                edits.add(new int[]{ previousX, previousY, 1 });
+            } else {
+                edits.add(new int[]{ previousX, previousY, 0 });
+            }
+            x = previousX;
+            y = previousY;
+        }
+        Collections.reverse(edits);
+
+        List<Hunk> hunks = new ArrayList<>();
+        int fromStart = -1;
+        int fromEnd = -1;
+        int toStart = -1;
+        int toEnd = -1;
+        for (int[] edit : edits) {
+            if (edit[0] != fromEnd || edit[1] != toEnd) {
+                if (fromStart != -1) {
+                    hunks.add(new Hunk(offset + fromStart, offset + fromEnd, offset + toStart, offset + toEnd));
+                }
+                fromStart = fromEnd = edit[0];
+                toStart = toEnd = edit[1];
+            }
+            if (edit[2] == 0) {
+                fromEnd++;
+            } else {
+                toEnd++;
+            }
+        }
+        if (fromStart != -1) {
+            hunks.add(new Hunk(offset + fromStart, offset + fromEnd, offset + toStart, offset + toEnd));
+        }
+        return hunks;
+    }
+}
@@ -0,0 +1,152 @@
+package at.yawk.patchtools.editor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Indenting, line-oriented text buffer. Text is kept in fixed-size chunks so growing never copies what was already
+ * written, and {@link #clear()} keeps the chunks around so a sink can be reused for the next text.
+ *
+ * @author yawkat
+ */
+class LineSink {
+    private static final int CHUNK_SIZE = 1 << 16;
+    /**
+     * Chunks kept by {@link #clear()}, so one huge text does not pin its memory forever.
+     */
+    private static final int MAX_RETAINED_CHUNKS = 16;
+
+    private final String indentToken;
+    private final List<char[]> chunks = new ArrayList<>();
+    /**
+     * Index of the chunk we are writing to.
+     */
+    private int chunk;
+    /**
+     * Position in that chunk.
+     */
+    private int position;
+
+    private int indent;
+    private boolean lineStart = true;
+
+    LineSink(String indentToken) {
+        this.indentToken = indentToken;
+        chunks.add(new char[CHUNK_SIZE]);
+    }
+
+    void clear() {
+        while (chunks.size() > MAX_RETAINED_CHUNKS) {
+            chunks.remove(chunks.size() - 1);
+        }
+        chunk = 0;
+        position = 0;
+        indent = 0;
+        lineStart = true;
+    }
+
+    void indent() {
+        indent++;
+    }
+
+    void unindent() {
+        indent--;
+    }
+
+    private void put(char c) {
+        if (position == CHUNK_SIZE) {
+            chunk++;
+            position = 0;
+            if (chunk == chunks.size()) {
+                chunks.add(new char[CHUNK_SIZE]);
+            }
+        }
+        chunks.get(chunk)[position++] = c;
+    }
+
+    private void put(CharSequence s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            put(s.charAt(i));
+        }
+    }
+
+    private void startLine() {
+        if (lineStart) {
+            lineStart = false;
+            for (int i = 0; i < indent; i++) {
+                put(indentToken, 0, indentToken.length());
+            }
+        }
+    }
+
+    LineSink append(char c) {
+        startLine();
+        put(c);
+        return this;
+    }
+
+    LineSink append(CharSequence s) {
+        startLine();
+        put(s, 0, s.length());
+        return this;
+    }
+
+    /**
+     * Append text, escaping line breaks and quotes as in a java string literal body.
+     */
+    LineSink appendEscaped(CharSequence s) {
+        startLine();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\n') {
+                put('\\');
+                put('n');
+            } else if (c == '"') {
+                put('\\');
+                put('"');
+            } else {
+                put(c);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * End the current line.
+     */
+    LineSink newLine() {
+        put('\n');
+        lineStart = true;
+        return this;
+    }
+
+    /**
+     * Append complete lines, each terminated by a line break, at the current indentation.
+     */
+    LineSink appendLines(CharSequence block) {
+        int start = 0;
+        for (int i = 0; i < block.length(); i++) {
+            if (block.charAt(i) == '\n') {
+                startLine();
+                put(block, start, i);
+                newLine();
+                start = i + 1;
+            }
+        }
+        return this;
+    }
+
+    int length() {
+        return chunk * CHUNK_SIZE + position;
+    }
+
+    @Override
+    public String toString() {
+        char[] text = new char[length()];
+        for (int i = 0; i < chunk; i++) {
+            System.arraycopy(chunks.get(i), 0, text, i * CHUNK_SIZE, CHUNK_SIZE);
+        }
+        System.arraycopy(chunks.get(chunk), 0, text, chunk * CHUNK_SIZE, position);
+        return new String(text);
+    }
+}
@@ -1,10 +1,11 @@
 package at.yawk.patchtools.editor;
 
+import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
@@ -14,30 +15,58 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
-import org.controlsfx.control.action.Action;
-import org.controlsfx.dialog.Dialogs;
 
 /**
  * @author yawkat
  */
 public class Main extends Application {
+    /**
+     * The opened jar, if any. Kept open while the editor runs so classes can be switched.
+     */
+    private JarIndex jar;
+
     @Override
     public void start(Stage primaryStage) throws Exception {
+        if (!"false".equals(getParameters().getNamed().get("warmup"))) {
+            Warmup.start();
+        }
+
         String input = getParameters().getNamed().get("input");
 
         Path opened;
         if (input == null) {
-            opened = requestClass(primaryStage);
+            FileChooser classFileChooser = new FileChooser();
+            classFileChooser.setTitle("Class File");
+            File file = classFileChooser.showOpenDialog(primaryStage);
+            if (file == null) {
+                System.exit(0);
+            }
+            opened = file.toPath();
         } else {
             opened = expandShell(Paths.get(input));
+        }
 
-            String clazz = getParameters().getNamed().get("class");
-            if (clazz != null) {
-                opened = openClass(opened, clazz);
+        String className = null;
+        if (opened.toString().toLowerCase().endsWith(".jar")) {
+            jar = JarIndex.open(opened);
+            className = getParameters().getNamed().get("class");
+            if (className == null) {
+                Optional<String> picked = ClassBrowser.show(primaryStage, jar);
+                if (!picked.isPresent()) {
+                    System.exit(0);
+                }
+                className = picked.get();
             }
         }
 
-        openMainWindow(primaryStage, opened);
+        openMainWindow(primaryStage, opened, className);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (jar != null) {
+            jar.close();
+        }
     }
 
     private static Path expandShell(Path path) {
@@ -47,45 +76,51 @@ public class Main extends Application {
         return path.toAbsolutePath();
     }
 
-    private Path requestClass(Stage primaryStage) throws IOException {
-        FileChooser classFileChooser = new FileChooser();
-        classFileChooser.setTitle("Class File");
-        Path opened = classFileChooser.showOpenDialog(primaryStage).toPath();
-
-        if (opened.toString().toLowerCase().endsWith(".jar")) {
-            Optional<String> input = Dialogs.create()
-                    .owner(primaryStage)
-                    .title("Class")
-                    .masthead("Enter class name")
-                    .actions(new Action("Ok"))
-                    .showTextInput();
-
-            if (!input.isPresent()) {
-                System.exit(0);
-            }
-
-            String className = input.get();
-            opened = openClass(opened, className);
-        }
-        return opened;
-    }
-
-    private Path openClass(Path zip, String className) throws IOException {
-        FileSystem zipfs = FileSystems.newFileSystem(zip, null);
-        className = className.replace('.', '/');
-        if (!className.toLowerCase().endsWith(".class")) { className += ".class"; }
-        zip = zipfs.getPath(className);
-        return zip;
-    }
-
-    private void openMainWindow(Stage primaryStage, Path classFile) throws java.io.IOException {
+    /**
+     * @param className the class to open from the jar at <code>file</code>, or <code>null</code> if <code>file</code>
+     *                  is a class file.
+     */
+    private void openMainWindow(Stage primaryStage, Path file, String className) throws java.io.IOException {
         Main.<MainController>open(
                 primaryStage,
                 "main.fxml",
                 "PTE",
                 c -> {
                     c.setStage(primaryStage);
-                    c.loadClassFile(classFile);
+                    String cacheSize = getParameters().getNamed().get("cache-size");
+                    if (cacheSize != null) {
+                        c.setCacheBudget(Long.parseLong(cacheSize) << 20);
+                    }
+                    String diskCache = getParameters().getNamed().get("disk-cache");
+                    String diskCacheSize = getParameters().getNamed().get("disk-cache-size");
+                    if (!"false".equals(diskCache)) {
+                        c.setDiskCache(
+                                diskCache == null ? DiskCache.defaultDirectory() : expandShell(Paths.get(diskCache)),
+                                diskCacheSize == null ? DiskCache.DEFAULT_CAP : Long.parseLong(diskCacheSize) << 20
+                        );
+                    }
+                    String debounceMin = getParameters().getNamed().get("debounce-min");
+                    String debounceMax = getParameters().getNamed().get("debounce-max");
+                    if (debounceMin != null || debounceMax != null) {
+                        // a single given limit moves the default of the other one out of its way
+                        long floor = debounceMin == null ?
+                                Math.min(AdaptiveDebounce.DEFAULT_FLOOR, Long.parseLong(debounceMax)) :
+                                Long.parseLong(debounceMin);
+                        long ceiling = debounceMax == null ?
+                                Math.max(AdaptiveDebounce.DEFAULT_CEILING, floor) :
+                                Long.parseLong(debounceMax);
+                        if (floor > ceiling) {
+                            System.err.println("--debounce-min must not be above --debounce-max");
+                            System.exit(1);
+                        }
+                        c.setDebounceLimits(floor, ceiling);
+                    }
+                    if (className == null) {
+                        c.loadClassFile(file);
+                    } else {
+                        c.setJar(jar);
+                        c.loadJarClass(className);
+                    }
                 }
         );
     }
@@ -120,8 +155,43 @@ public class Main extends Application {
         }
     }
 
-    public static void main(String[] args) {
-        launch(args);
+    public static void main(String[] args) throws IOException {
+        Map<String, String> named = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int split = arg.indexOf('=');
+                named.put(split == -1 ? arg.substring(2) : arg.substring(2, split),
+                          split == -1 ? "" : arg.substring(split + 1));
+            }
+        }
+        if (named.containsKey("daemon")) {
+            runDaemon(named);
+        } else {
+            launch(args);
+        }
+    }
+
+    /**
+     * Run headless as a {@link PatchDaemon}: <code>--daemon[=port]</code>, with <code>--workers</code>,
+     * <code>--cache-size</code>, <code>--disk-cache</code> and <code>--disk-cache-size</code> as in the editor.
+     */
+    private static void runDaemon(Map<String, String> named) throws IOException {
+        if (!"false".equals(named.get("warmup"))) {
+            Warmup.start();
+        }
+        String port = named.get("daemon");
+        String workers = named.get("workers");
+        String cacheSize = named.get("cache-size");
+        String diskCache = named.get("disk-cache");
+        String diskCacheSize = named.get("disk-cache-size");
+        new PatchDaemon(
+                port.isEmpty() ? PatchDaemon.DEFAULT_PORT : Integer.parseInt(port),
+                workers == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(workers),
+                cacheSize == null ? ComputedCodeCache.DEFAULT_BUDGET : Long.parseLong(cacheSize) << 20,
+                "false".equals(diskCache) ? null :
+                        diskCache == null ? DiskCache.defaultDirectory() : expandShell(Paths.get(diskCache)),
+                diskCacheSize == null ? DiskCache.DEFAULT_CAP : Long.parseLong(diskCacheSize) << 20
+        ).run();
     }
 
     public static interface ThrowingConsumer<T, E extends Throwable> {
@@ -1,34 +1,41 @@
 package at.yawk.patchtools.editor;
 
-import com.strobel.assembler.metadata.Buffer;
-import com.strobel.assembler.metadata.ClassFileReader;
-import com.strobel.assembler.metadata.IMetadataResolver;
-import com.strobel.assembler.metadata.TypeDefinition;
-import com.strobel.decompiler.DecompilerContext;
-import com.strobel.decompiler.DecompilerSettings;
-import com.strobel.decompiler.PlainTextOutput;
-import com.strobel.decompiler.languages.java.ast.AstBuilder;
+import com.google.common.base.Stopwatch;
+import com.google.common.hash.HashCode;
 import java.io.*;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
-import javafx.concurrent.Task;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
+import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.ContextMenu;
+import javafx.scene.control.Label;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.TextArea;
+import javafx.scene.control.Tooltip;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyCodeCombination;
 import javafx.scene.input.KeyCombination;
@@ -39,56 +46,137 @@ import javafx.scene.layout.Priority;
 import javafx.scene.layout.RowConstraints;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import org.fxmisc.richtext.CodeArea;
-import org.fxmisc.richtext.PlainTextChange;
-import org.fxmisc.richtext.StyledTextArea;
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassWriter;
-import org.objectweb.asm.Opcodes;
+import org.fxmisc.richtext.Paragraph;
 import org.objectweb.asm.tree.ClassNode;
-import org.reactfx.EventStream;
-import uk.co.thinkofdeath.patchtools.Patcher;
 import uk.co.thinkofdeath.patchtools.lexer.LexerException;
 import uk.co.thinkofdeath.patchtools.logging.LoggableException;
-import uk.co.thinkofdeath.patchtools.wrappers.ClassPathWrapper;
-import uk.co.thinkofdeath.patchtools.wrappers.ClassSet;
 
 /**
  * @author yawkat
  */
 public class MainController {
     private static final Pattern NON_WHITESPACE = Pattern.compile("\\S");
-    private final Executor executor = Executors.newCachedThreadPool(new DaemonThreadFactory());
+    private final EvaluationScheduler scheduler = new EvaluationScheduler(this::showEvaluationError);
+    private final AdaptiveDebounce debounce = new AdaptiveDebounce();
+    /**
+     * Shared pool for the bytecode markup and decompile stages.
+     */
+    private final Executor renderPool =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory());
 
     @FXML GridPane rootPane;
     @FXML CodeArea javaCode;
     @FXML CodeArea byteCode;
     @FXML CodeArea patchCode;
     @FXML TextArea log;
+    @FXML Label status;
 
     private Stage stage;
     private BooleanProperty saved = new SimpleBooleanProperty(true);
-    private ClassNode initClass;
+    private volatile ClassSnapshot initClass;
     private Optional<Path> patchFile = Optional.empty();
-    private Optional<Path> classFile = Optional.empty();
+    private Optional<String> classSource = Optional.empty();
+    private Optional<JarIndex> jar = Optional.empty();
+    /**
+     * Full-text search over {@link #jar}, started the first time it is opened.
+     */
+    private Optional<JarSearch> jarSearch = Optional.empty();
+    private Optional<JarSearchIndex> jarSearchIndex = Optional.empty();
+    private volatile IncrementalPatcher patcher = new IncrementalPatcher(Patching::newClassSet);
+    private long cacheBudget = ComputedCodeCache.DEFAULT_BUDGET;
+    private DiskCache diskCache;
+    private ComputedCodeCache codeCache = new ComputedCodeCache(ComputedCodeCache.DEFAULT_BUDGET);
+    private CodeRenderer renderer = new CodeRenderer(ComputedCodeCache.DEFAULT_BUDGET);
+    private BytecodeOutline bytecodeOutline;
+    /**
+     * Whether the bytecode view shows the differences to the original class instead of the patched class.
+     */
+    private volatile boolean showDiff;
+    private BytecodeDiff bytecodeDiff;
 
     public void setStage(Stage stage) {
         this.stage = stage;
     }
 
-    public void loadClassFile(Path path) throws IOException {
-        try (InputStream is = Files.newInputStream(path)) {
-            ClassReader reader = new ClassReader(is);
-            initClass = new ClassNode(Opcodes.ASM5);
-            reader.accept(initClass, 0);
+    /**
+     * Set the approximate memory budget in bytes for views of already rendered classes and methods.
+     */
+    public void setCacheBudget(long budget) {
+        cacheBudget = budget;
+        codeCache = new ComputedCodeCache(budget, diskCache);
+        renderer = new CodeRenderer(budget);
+        jar.ifPresent(this::setJar);
+    }
+
+    /**
+     * Keep rendered views in the given directory across sessions, or only in memory if <code>directory</code> is
+     * <code>null</code>.
+     *
+     * @param cap size cap of the directory in bytes
+     */
+    public void setDiskCache(Path directory, long cap) {
+        diskCache = directory == null ? null : new DiskCache(directory, cap, this::showDiskCacheError);
+        codeCache = new ComputedCodeCache(cacheBudget, diskCache);
+    }
+
+    /**
+     * Show a failed read or write of the disk cache in the log. The view was rendered anyway, so the patch field stays
+     * as it is.
+     */
+    private void showDiskCacheError(IOException error) {
+        Platform.runLater(() -> showException(error));
+    }
+
+    /**
+     * Set the minimum and maximum time in milliseconds to wait after the last patch edit before evaluating it.
+     */
+    public void setDebounceLimits(long floor, long ceiling) {
+        debounce.setLimits(floor, ceiling);
+    }
+
+    /**
+     * Set the jar that classes are picked from. Classes can then be switched with the class browser.
+     */
+    public void setJar(JarIndex jar) {
+        if (!this.jar.equals(Optional.of(jar))) {
+            jarSearch = Optional.empty();
+            jarSearchIndex = Optional.empty();
         }
+        this.jar = Optional.of(jar);
+        this.patcher = new IncrementalPatcher(new JarClassCache(jar, cacheBudget)::newClassSet);
+        renderer.setJar(jar);
+    }
 
-        ClassWriter writer = new ClassWriter(0);
-        initClass.accept(writer);
+    public void loadClassFile(Path path) throws IOException {
+        loadClass(path.toString(), Files.readAllBytes(path));
+    }
 
-        classFile = Optional.of(path);
+    /**
+     * Load a class of the current jar.
+     *
+     * @param className dotted name of the class
+     */
+    public void loadJarClass(String className) throws IOException {
+        JarIndex index = jar.orElseThrow(() -> new IllegalStateException("No jar opened"));
+        loadClass(index.getPath().getFileName() + "!/" + JarIndex.toEntryName(className), index.readClass(className));
+    }
 
-        applyComputedCode(asyncComputeCode(initClass));
+    private void loadClass(String source, byte[] bytes) {
+        ClassSnapshot loaded = new ClassSnapshot(bytes);
+        ClassNode view = loaded.newNode();
+
+        initClass = loaded;
+        bytecodeOutline.collapseAll();
+        classSource = Optional.of(source);
+
+        debounce.reset();
+        scheduler.submit(c -> {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            render(view, c);
+            debounce.record(stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        });
 
         updateTitle();
     }
@@ -112,6 +200,17 @@ public class MainController {
             row.setVgrow(Priority.ALWAYS);
             rootPane.getRowConstraints().add(row);
         }
+        RowConstraints statusRow = new RowConstraints();
+        statusRow.setVgrow(Priority.NEVER);
+        rootPane.getRowConstraints().add(statusRow);
+
+        status.setTooltip(new Tooltip("Median / 95th percentile of the last runs of each stage"));
+        Timeline statusUpdate = new Timeline(new KeyFrame(Duration.seconds(1), evt -> updateStatus()));
+        statusUpdate.setCycleCount(Animation.INDEFINITE);
+        statusUpdate.play();
+
+        bytecodeOutline = new BytecodeOutline(
+                byteCode, text -> replaceTextNoScroll(byteCode, text), method -> renderer.instructions(method));
 
         KeywordHighlighter.JAVA.decorate(javaCode);
         KeywordHighlighter.PATCH.decorate(byteCode);
@@ -137,26 +236,15 @@ public class MainController {
             }
         });
 
-        EventStream<PlainTextChange> patchStream = patchCode.plainTextChanges();
-        patchStream
-                .successionEnds(Duration.ofSeconds(2))
-                .supplyTask(() -> {
-                    Task<ComputedCode> task = new Task<ComputedCode>() {
-                        @Override
-                        protected ComputedCode call() throws Exception {
-                            ClassNode classBytes = getPatched(patchCode.getText());
-                            return asyncComputeCode(classBytes);
-                        }
-                    };
-                    executor.execute(task);
-                    return task;
-                })
-                .awaitLatest(patchStream)
-                .handleErrors(exception -> {
-                    setPatchFieldColor(true);
-                    showException(exception);
-                })
-                .subscribe(this::applyComputedCode);
+        PauseTransition evaluationDelay = new PauseTransition();
+        evaluationDelay.setOnFinished(evt -> {
+            String patch = patchCode.getText();
+            scheduler.submit(cancellation -> evaluate(patch, cancellation));
+        });
+        patchCode.plainTextChanges().subscribe(c -> {
+            evaluationDelay.setDuration(Duration.millis(debounce.getDelay()));
+            evaluationDelay.playFromStart();
+        });
 
         ContextMenu patchContextMenu = new ContextMenu();
 
@@ -185,11 +273,54 @@ public class MainController {
         saveAs.setOnAction(evt -> save(true));
         patchContextMenu.getItems().add(saveAs);
 
+        MenuItem openClass = new MenuItem("Open Class\u2026");
+        openClass.setOnAction(evt -> jar.ifPresent(index -> ClassBrowser.show(stage, index)
+                .ifPresent(this::switchJarClass)));
+        patchContextMenu.getItems().add(openClass);
+        openClass.setAccelerator(new KeyCodeCombination(KeyCode.N, KeyCombination.CONTROL_DOWN));
+
+        MenuItem searchJar = new MenuItem("Search Jar\u2026");
+        searchJar.setOnAction(evt -> jar.ifPresent(index -> {
+            if (!jarSearch.isPresent()) {
+                JarSearchIndex searchIndex = JarSearchIndex.start(index);
+                jarSearchIndex = Optional.of(searchIndex);
+                jarSearch = Optional.of(new JarSearch(stage, searchIndex, this::switchJarClass));
+            }
+            jarSearch.get().show();
+        }));
+        patchContextMenu.getItems().add(searchJar);
+        searchJar.setAccelerator(new KeyCodeCombination(KeyCode.F, KeyCombination.CONTROL_DOWN,
+                                                         KeyCombination.SHIFT_DOWN));
+
         patchCode.setContextMenu(patchContextMenu);
 
+        ContextMenu byteCodeContextMenu = new ContextMenu();
+        CheckMenuItem diff = new CheckMenuItem("Show Diff");
+        diff.selectedProperty().addListener((observable, oldValue, newValue) -> {
+            showDiff = newValue;
+            String patch = patchCode.getText();
+            scheduler.submit(cancellation -> evaluate(patch, cancellation));
+        });
+        byteCodeContextMenu.getItems().add(diff);
+        diff.setAccelerator(new KeyCodeCombination(KeyCode.D, KeyCombination.CONTROL_DOWN));
+        byteCode.setContextMenu(byteCodeContextMenu);
+
         saved.addListener((observable, oldValue, newValue) -> updateTitle());
     }
 
+    /**
+     * Load a class of the current jar and evaluate the current patch against it.
+     */
+    private void switchJarClass(String className) {
+        try {
+            loadJarClass(className);
+            String patch = patchCode.getText();
+            scheduler.submit(cancellation -> evaluate(patch, cancellation));
+        } catch (IOException e) {
+            showException(e);
+        }
+    }
+
     private synchronized void save(boolean forceChoose) {
         if (!patchFile.isPresent() || forceChoose) {
             FileChooser chooser = new FileChooser();
@@ -230,47 +361,205 @@ public class MainController {
         log.setText(trace.replace("\t", "  "));
     }
 
-    private void applyComputedCode(ComputedCode b) {
-        setPatchFieldColor(false);
-        replaceTextNoScroll(javaCode, b.javaCode);
-        replaceTextNoScroll(byteCode, b.byteCode);
-        log.setText("");
+    /**
+     * Evaluation stages: patch, then {@link #render(ClassNode, EvaluationScheduler.Cancellation)}. The time of
+     * evaluations that were not cancelled feeds the debounce delay.
+     */
+    private void evaluate(String patch, EvaluationScheduler.Cancellation cancellation) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        ClassNode patched;
+        try (PipelineStage.Timer ignored = PipelineStage.PATCH.start(initClass.getName())) {
+            patched = getPatched(patch);
+        } catch (Exception e) {
+            showEvaluationError(e, cancellation);
+            return;
+        }
+        render(patched, cancellation);
+        if (!cancellation.isCancelled()) {
+            debounce.record(stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        }
     }
 
+    private void render(ClassNode classBytes, EvaluationScheduler.Cancellation cancellation) {
+        cancellation.checkpoint();
+        Platform.runLater(() -> {
+            if (cancellation.isCancelled()) { return; }
+            setPatchFieldColor(false);
+            log.setText("");
+        });
+        asyncComputeCode(classBytes, cancellation).join();
+    }
+
+    /**
+     * Show an error of an evaluation in the log and mark the patch field on the FX thread, unless the evaluation was
+     * superseded in the meantime.
+     */
+    private void showEvaluationError(Throwable error, EvaluationScheduler.Cancellation cancellation) {
+        Platform.runLater(() -> {
+            if (cancellation.isCancelled()) { return; }
+            setPatchFieldColor(true);
+            showException(error);
+        });
+    }
+
+    /**
+     * Show the result of a render stage on the FX thread unless its evaluation was superseded in the meantime.
+     */
+    private void applyStage(EvaluationScheduler.Cancellation cancellation, CodeArea area, String text, Throwable error,
+                            Consumer<String> show) {
+        Platform.runLater(() -> {
+            if (cancellation.isCancelled()) { return; }
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                if (!(cause instanceof CancellationException)) {
+                    setPatchFieldColor(true);
+                    showException(cause);
+                }
+            } else {
+                try (PipelineStage.Timer ignored = PipelineStage.APPLY.start(area.getId())) {
+                    show.accept(text);
+                }
+            }
+        });
+    }
+
+    /**
+     * Replace the text of the given area by only replacing the lines that changed, so scroll position, selection and
+     * the styling of unchanged lines stay as they are.
+     */
     private static void replaceTextNoScroll(CodeArea area, String text) {
-        try {
-            Field field1 = StyledTextArea.class.getDeclaredField("content");
-            field1.setAccessible(true);
-            Object doc = field1.get(area);
-            Method method = doc.getClass().getDeclaredMethod("replaceText", int.class, int.class, String.class);
-            method.setAccessible(true);
-            method.invoke(doc, 0, area.getLength(), text);
-        } catch (ReflectiveOperationException e) {
-            throw new RuntimeException(e);
+        List<String> oldLines = new ArrayList<>(area.getParagraphs().size());
+        for (Paragraph<?> paragraph : area.getParagraphs()) {
+            oldLines.add(paragraph.toString());
+        }
+        List<String> newLines = Arrays.asList(text.split("\n", -1));
+        List<LineDiff.Hunk> hunks = LineDiff.diff(oldLines, newLines);
+        if (hunks.isEmpty()) { return; }
+
+        // offsets as if every line ended with a line break, lineStarts[n] == length + 1
+        int length = area.getLength();
+        int[] lineStarts = new int[oldLines.size() + 1];
+        for (int i = 0; i < oldLines.size(); i++) {
+            lineStarts[i + 1] = lineStarts[i] + oldLines.get(i).length() + 1;
         }
+
+        int anchor = area.getAnchor();
+        int caret = area.getCaretPosition();
+        for (int i = hunks.size() - 1; i >= 0; i--) {
+            LineDiff.Hunk hunk = hunks.get(i);
+            int start = lineStarts[hunk.fromStart];
+            int end = lineStarts[hunk.fromEnd];
+            StringBuilder replacement = new StringBuilder();
+            for (int j = hunk.toStart; j < hunk.toEnd; j++) {
+                replacement.append(newLines.get(j)).append('\n');
+            }
+            if (end == length + 1) {
+                // the last line has no line break of its own
+                if (replacement.length() == 0) {
+                    end = length;
+                    if (start > 0) { start--; }
+                } else if (start == end) {
+                    start = end = length;
+                    replacement.insert(0, '\n').setLength(replacement.length() - 1);
+                } else {
+                    end = length;
+                    replacement.setLength(replacement.length() - 1);
+                }
+            }
+            area.replaceText(start, end, replacement.toString());
+            anchor = mapOffset(anchor, start, end, replacement.length());
+            caret = mapOffset(caret, start, end, replacement.length());
+        }
+        area.selectRange(anchor, caret);
     }
 
-    private ComputedCode asyncComputeCode(ClassNode classBytes) {
-        PlainTextOutput byteCodeOutput = new PlainTextOutput();
-        byteCodeOutput.setIndentToken("  ");
-        new BytecodeMarkup().write(classBytes::accept, byteCodeOutput);
-
-        ClassWriter writer = new ClassWriter(0);
-        classBytes.accept(writer);
-
-        AstBuilder builder = new AstBuilder(
-                new DecompilerContext(new DecompilerSettings())
-        );
-        TypeDefinition typeDefinition = ClassFileReader.readClass(
-                ClassFileReader.OPTION_PROCESS_ANNOTATIONS | ClassFileReader.OPTION_PROCESS_CODE,
-                IMetadataResolver.EMPTY,
-                new Buffer(writer.toByteArray())
-        );
-        builder.addType(typeDefinition);
-        PlainTextOutput output = new PlainTextOutput();
-        builder.generateCode(output);
-
-        return new ComputedCode(byteCodeOutput.toString(), output.toString());
+    /**
+     * Map an offset across the replacement of <code>[start, end)</code> by <code>length</code> characters.
+     */
+    private static int mapOffset(int offset, int start, int end, int length) {
+        if (offset >= end) {
+            return offset - (end - start) + length;
+        } else if (offset > start) {
+            return start;
+        } else {
+            return offset;
+        }
+    }
+
+    /**
+     * Render the bytecode and java views of the given class concurrently on the render pool and publish each one as
+     * soon as it is ready. <code>classBytes</code> must not be used by anything else afterwards.
+     *
+     * @return a future that completes, successfully or not, once both stages are done.
+     */
+    private CompletableFuture<?> asyncComputeCode(ClassNode classBytes, EvaluationScheduler.Cancellation cancellation) {
+        byte[] bytes;
+        HashCode hash;
+        boolean diff = showDiff;
+        boolean outline = !diff && BytecodeOutline.shouldOutline(classBytes);
+        try (PipelineStage.Timer ignored = PipelineStage.WRITE.start(classBytes.name)) {
+            bytes = Patching.toBytes(classBytes);
+            hash = ComputedCodeCache.key(ComputedCodeCache.hash(bytes), outline, renderer.getTypeContext());
+        }
+        ComputedCode cached = codeCache.get(hash);
+        Consumer<String> showByteCode = text -> bytecodeOutline.show(text, outline ? classBytes : null);
+        Consumer<String> showJavaCode = text -> replaceTextNoScroll(javaCode, text);
+        if (cached != null && !diff) {
+            applyStage(cancellation, byteCode, cached.byteCode, null, showByteCode);
+            applyStage(cancellation, javaCode, cached.javaCode, null, showJavaCode);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // computed here, before both stages use the class at once
+        Map<String, HashCode> fingerprints = MethodFingerprint.ofMethods(classBytes);
+        CompletableFuture<String> byteCodeStage = CompletableFuture.supplyAsync(() -> {
+            cancellation.checkpoint();
+            try (PipelineStage.Timer ignored = PipelineStage.MARKUP.start(classBytes.name)) {
+                return diff ? getBytecodeDiff().diff(classBytes) : renderer.markup(classBytes, outline, fingerprints);
+            }
+        }, renderPool);
+        CompletableFuture<String> javaCodeStage = cached != null ?
+                CompletableFuture.completedFuture(cached.javaCode) :
+                CompletableFuture.supplyAsync(() -> {
+                    cancellation.checkpoint();
+                    try (PipelineStage.Timer ignored = PipelineStage.DECOMPILE.start(classBytes.name)) {
+                        return renderer.decompile(bytes, fingerprints, cancellation);
+                    }
+                }, renderPool);
+        byteCodeStage.whenComplete((text, error) -> applyStage(cancellation, byteCode, text, error, showByteCode));
+        javaCodeStage.whenComplete((text, error) -> applyStage(cancellation, javaCode, text, error, showJavaCode));
+        if (!diff) {
+            byteCodeStage.thenAcceptBoth(javaCodeStage, (b, j) -> codeCache.put(hash, new ComputedCode(b, j)));
+        }
+        return CompletableFuture.allOf(byteCodeStage, javaCodeStage).handle((r, e) -> null);
+    }
+
+    /**
+     * @return the diff against the current original class, created when the class changed.
+     */
+    private synchronized BytecodeDiff getBytecodeDiff() {
+        ClassSnapshot original = initClass;
+        if (bytecodeDiff == null || bytecodeDiff.getOriginal() != original) {
+            bytecodeDiff = new BytecodeDiff(original, method -> renderer.instructions(method));
+        }
+        return bytecodeDiff;
+    }
+
+    private void updateStatus() {
+        StringBuilder text = new StringBuilder();
+        for (PipelineStage stage : PipelineStage.values()) {
+            RollingHistogram histogram = stage.getHistogram();
+            if (histogram.getCount() == 0) { continue; }
+            text.append(stage.getLabel()).append(' ')
+                    .append(histogram.getPercentileMillis(50)).append('/')
+                    .append(histogram.getPercentileMillis(95)).append(" ms   ");
+        }
+        text.append("queued ").append(scheduler.getQueueDepth())
+                .append("   cancelled ").append(scheduler.getCancelledCount())
+                .append('/').append(scheduler.getSubmittedCount());
+        jarSearchIndex.filter(index -> !index.isDone())
+                .ifPresent(index -> text.append("   ").append(JarSearch.progress(index)));
+        status.setText(text.toString());
     }
 
     private void setPatchFieldColor(boolean error) {
@@ -282,19 +571,7 @@ public class MainController {
     }
 
     private ClassNode getPatched(String patch) {
-        // clone class node
-        ClassNode node = new ClassNode(Opcodes.ASM5);
-        initClass.accept(node);
-
-        // init class set
-        ClassSet classSet = new ClassSet(new ClassPathWrapper());
-        classSet.add(node);
-
-        // apply patch
-        Patcher patcher = new Patcher(classSet);
-        patcher.apply(new StringReader(patch));
-
-        return classSet.getClassWrapper(node.name).getNode();
+        return patcher.patchClass(initClass, patch);
     }
 
     private void updateTitle() {
@@ -304,17 +581,8 @@ public class MainController {
 
         title.append("PTE");
         patchFile.ifPresent(p -> title.append(" - ").append(p));
-        classFile.ifPresent(p -> title.append(" - ").append(p));
+        classSource.ifPresent(p -> title.append(" - ").append(p));
         stage.setTitle(title.toString());
     }
 
-    private static class ComputedCode {
-        private final String byteCode;
-        private final String javaCode;
-
-        public ComputedCode(String byteCode, String javaCode) {
-            this.byteCode = byteCode;
-            this.javaCode = javaCode;
-        }
-    }
 }
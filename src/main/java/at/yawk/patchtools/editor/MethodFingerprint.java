@@ -0,0 +1,48 @@
+package at.yawk.patchtools.editor;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.util.HashMap;
+import java.util.Map;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Content hash of a single method: access, name, descriptor, instructions, try-catch blocks and debug info. Two
+ * methods with the same fingerprint render to the same text.
+ *
+ * @author yawkat
+ */
+class MethodFingerprint {
+    private MethodFingerprint() {}
+
+    static HashCode of(MethodNode method) {
+        // serialize the method alone so the constant pool only depends on this method
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "F", null, "java/lang/Object", null);
+        method.accept(writer);
+        writer.visitEnd();
+        return Hashing.murmur3_128().hashBytes(writer.toByteArray());
+    }
+
+    /**
+     * @return the fingerprints of all methods of a class by {@link #key(MethodNode)}. This visits the methods, so
+     * <code>node</code> must not be visited concurrently.
+     */
+    static Map<String, HashCode> ofMethods(ClassNode node) {
+        Map<String, HashCode> fingerprints = new HashMap<>();
+        for (MethodNode method : node.methods) {
+            fingerprints.put(key(method), of(method));
+        }
+        return fingerprints;
+    }
+
+    /**
+     * @return name and descriptor of a method, which identify it within its class.
+     */
+    static String key(MethodNode method) {
+        return method.name + method.desc;
+    }
+}
@@ -0,0 +1,247 @@
+package at.yawk.patchtools.editor;
+
+import com.google.common.hash.HashCode;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * Headless server that renders patched classes for other tools, keeping patchtools, Procyon and the view caches warm
+ * between requests. It listens on a loopback port and speaks a simple framed protocol, one request and one response
+ * at a time per connection:
+ *
+ * <pre>
+ * request:  'R' int classLength, class bytes, int patchLength, UTF-8 patch (may be empty)
+ *           'S' (latency statistics)
+ * response: byte status (0 ok, 1 error), then for 'R' the bytecode markup, java source and error message, for 'S'
+ *           the statistics, each as int length and UTF-8 text
+ * </pre>
+ *
+ * All integers are big endian. Requests of all connections are rendered on a bounded worker pool; a request that
+ * does not fit in its queue is answered with an error right away. Each connection keeps an
+ * {@link IncrementalPatcher} for the last class it sent, so a client that re-sends the same class with an edited
+ * patch only re-applies the changed members.
+ *
+ * @author yawkat
+ */
+class PatchDaemon {
+    static final int DEFAULT_PORT = 7391;
+    private static final int MAX_FRAME = 64 << 20;
+    private static final int QUEUE_PER_WORKER = 16;
+
+    private static final byte STATUS_OK = 0;
+    private static final byte STATUS_ERROR = 1;
+
+    private final int port;
+    private final ComputedCodeCache codeCache;
+    private final CodeRenderer renderer;
+    private final ExecutorService workers;
+    private final ExecutorService connections = Executors.newCachedThreadPool(new DaemonThreadFactory());
+
+    private final RollingHistogram latency = new RollingHistogram(1024);
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    /**
+     * Failed reads and writes of the disk cache. Requests still get their views, so these are only counted.
+     */
+    private final AtomicLong diskCacheErrors = new AtomicLong();
+
+    /**
+     * @param budget    memory budget in bytes for cached views and methods
+     * @param diskCache directory for views kept across sessions, or <code>null</code>
+     */
+    PatchDaemon(int port, int workerCount, long budget, Path diskCache, long diskCacheCap) {
+        this.port = port;
+        this.codeCache = new ComputedCodeCache(
+                budget, diskCache == null ? null :
+                        new DiskCache(diskCache, diskCacheCap, e -> diskCacheErrors.incrementAndGet()));
+        this.renderer = new CodeRenderer(budget);
+        this.workers = new ThreadPoolExecutor(
+                workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workerCount * QUEUE_PER_WORKER), new DaemonThreadFactory());
+    }
+
+    /**
+     * Accept connections until the process is killed.
+     */
+    void run() throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.println("Listening on " + server.getLocalSocketAddress());
+            while (true) {
+                Socket socket = server.accept();
+                connections.execute(() -> serve(socket));
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        Connection connection = new Connection();
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            while (true) {
+                int op = in.read();
+                if (op == -1) { break; }
+                switch (op) {
+                case 'R':
+                    byte[] classBytes = readFrame(in);
+                    String patch = new String(readFrame(in), StandardCharsets.UTF_8);
+                    Response response = submit(connection, classBytes, patch);
+                    out.writeByte(response.error.isEmpty() ? STATUS_OK : STATUS_ERROR);
+                    writeText(out, response.byteCode);
+                    writeText(out, response.javaCode);
+                    writeText(out, response.error);
+                    break;
+                case 'S':
+                    out.writeByte(STATUS_OK);
+                    writeText(out, getStatistics());
+                    break;
+                default:
+                    out.writeByte(STATUS_ERROR);
+                    writeText(out, "Unknown request " + op);
+                    out.flush();
+                    return;
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // client went away or sent garbage, nothing to answer
+        }
+    }
+
+    private Response submit(Connection connection, byte[] classBytes, String patch) {
+        long start = System.nanoTime();
+        requests.incrementAndGet();
+        Response response;
+        try {
+            response = workers.submit(() -> render(connection, classBytes, patch)).get();
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            response = new Response("", "", "Too many requests, try again later");
+        } catch (ExecutionException e) {
+            response = new Response("", "", stackTrace(e.getCause()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response = new Response("", "", "Interrupted");
+        }
+        if (!response.error.isEmpty()) {
+            errors.incrementAndGet();
+        }
+        latency.record(System.nanoTime() - start);
+        return response;
+    }
+
+    private Response render(Connection connection, byte[] classBytes, String patch) {
+        ClassSnapshot snapshot = connection.snapshot(classBytes);
+        ClassNode patched;
+        try (PipelineStage.Timer ignored = PipelineStage.PATCH.start(snapshot.getName())) {
+            patched = patch.trim().isEmpty() ? snapshot.newNode() : connection.patcher.patchClass(snapshot, patch);
+        } catch (Exception e) {
+            return new Response("", "", stackTrace(e));
+        }
+
+        byte[] bytes;
+        HashCode hash;
+        try (PipelineStage.Timer ignored = PipelineStage.WRITE.start(patched.name)) {
+            bytes = Patching.toBytes(patched);
+            // the daemon never outlines and resolves types from the classpath, unlike the editor sharing the disk cache
+            hash = ComputedCodeCache.key(ComputedCodeCache.hash(bytes), false, renderer.getTypeContext());
+        }
+        ComputedCode cached = codeCache.get(hash);
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            return new Response(cached.byteCode, cached.javaCode, "");
+        }
+
+        Map<String, HashCode> fingerprints = MethodFingerprint.ofMethods(patched);
+        String byteCode;
+        try (PipelineStage.Timer ignored = PipelineStage.MARKUP.start(patched.name)) {
+            byteCode = renderer.markup(patched, false, fingerprints);
+        }
+        String javaCode;
+        try (PipelineStage.Timer ignored = PipelineStage.DECOMPILE.start(patched.name)) {
+            javaCode = renderer.decompile(bytes, fingerprints, EvaluationScheduler.Cancellation.NEVER);
+        }
+        codeCache.put(hash, new ComputedCode(byteCode, javaCode));
+        return new Response(byteCode, javaCode, "");
+    }
+
+    private String getStatistics() {
+        StringBuilder text = new StringBuilder();
+        text.append("requests ").append(requests.get())
+                .append("\nerrors ").append(errors.get())
+                .append("\nrejected ").append(rejected.get())
+                .append("\ncache hits ").append(cacheHits.get())
+                .append("\ndisk cache errors ").append(diskCacheErrors.get())
+                .append("\nlatency p50/p95/p99 ").append(latency.getPercentileMillis(50))
+                .append('/').append(latency.getPercentileMillis(95))
+                .append('/').append(latency.getPercentileMillis(99)).append(" ms\n");
+        for (PipelineStage stage : PipelineStage.values()) {
+            RollingHistogram histogram = stage.getHistogram();
+            if (histogram.getCount() == 0) { continue; }
+            text.append(stage.getLabel()).append(" p50/p95 ")
+                    .append(histogram.getPercentileMillis(50)).append('/')
+                    .append(histogram.getPercentileMillis(95)).append(" ms\n");
+        }
+        return text.toString();
+    }
+
+    private static byte[] readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME) {
+            throw new IOException("Bad frame length " + length);
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return frame;
+    }
+
+    private static void writeText(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String stackTrace(Throwable t) {
+        StringWriter w = new StringWriter();
+        t.printStackTrace(new PrintWriter(w));
+        return w.toString();
+    }
+
+    /**
+     * State of one client: the last class it sent and the patcher working on it.
+     */
+    private static class Connection {
+        private ClassSnapshot snapshot;
+        private final IncrementalPatcher patcher = new IncrementalPatcher(Patching::newClassSet);
+
+        ClassSnapshot snapshot(byte[] classBytes) {
+            ClassSnapshot candidate = new ClassSnapshot(classBytes);
+            if (snapshot == null || !snapshot.getHash().equals(candidate.getHash())) {
+                snapshot = candidate;
+            }
+            return snapshot;
+        }
+    }
+
+    private static class Response {
+        private final String byteCode;
+        private final String javaCode;
+        private final String error;
+
+        Response(String byteCode, String javaCode, String error) {
+            this.byteCode = byteCode;
+            this.javaCode = javaCode;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package at.yawk.patchtools.editor;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.hash.HashCode;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.objectweb.asm.tree.ClassNode;
+import uk.co.thinkofdeath.patchtools.wrappers.ClassPathWrapper;
+import uk.co.thinkofdeath.patchtools.wrappers.ClassSet;
+
+/**
+ * Headless entry point that applies every patch to every jar and reports which combinations still apply:
+ *
+ * <pre>java -cp patchtools-editor.jar at.yawk.patchtools.editor.PatchMatrix report.json a.jar b.jar x.patch...</pre>
+ *
+ * Arguments ending in <code>.jar</code> are jars, everything else is a patch; directories contribute the jars and
+ * patches they contain. Jars are evaluated one after another: their classes are read once into
+ * {@link ClassSnapshot}s, and each cell applies one patch to fresh trees of all of them. The cells of a jar run in
+ * parallel on a work-stealing pool, as many at a time as the free heap has room for. The report lists, for every
+ * cell, whether the patch applied, the classes it changed (see {@link TreeFingerprint} for what counts as a change)
+ * and the time it took. The exit code is 2 if any cell failed.
+ *
+ * @author yawkat
+ */
+public class PatchMatrix {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: PatchMatrix <report json> <jar|patch|directory>...");
+            System.exit(1);
+        }
+        List<Path> jars = new ArrayList<>();
+        List<Path> patches = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            Path path = Paths.get(args[i]);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> children = Files.list(path)) {
+                    children.filter(Files::isRegularFile).sorted().forEach(child -> classify(child, jars, patches));
+                }
+            } else {
+                classify(path, jars, patches);
+            }
+        }
+        if (jars.isEmpty() || patches.isEmpty()) {
+            System.err.println("Need at least one jar and one patch");
+            System.exit(1);
+        }
+
+        List<Cell> cells = run(jars, patches);
+        try (Writer out = Files.newBufferedWriter(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            writeReport(out, jars, patches, cells);
+        }
+        printSummary(jars, patches, cells);
+        if (cells.stream().anyMatch(cell -> !cell.passed)) {
+            System.exit(2);
+        }
+    }
+
+    private static void classify(Path path, List<Path> jars, List<Path> patches) {
+        if (path.getFileName().toString().endsWith(".jar")) {
+            jars.add(path);
+        } else {
+            patches.add(path);
+        }
+    }
+
+    /**
+     * Evaluate all combinations of the given jars and patches.
+     *
+     * @return the cells, jar-major.
+     */
+    private static List<Cell> run(List<Path> jarFiles, List<Path> patchFiles) throws IOException {
+        Stopwatch total = Stopwatch.createStarted();
+        Map<Path, String> patches = new HashMap<>();
+        for (Path patchFile : patchFiles) {
+            patches.put(patchFile, new String(Files.readAllBytes(patchFile), StandardCharsets.UTF_8));
+        }
+
+        List<Cell> cells = new ArrayList<>();
+        // one jar at a time, so only its classes and the trees its running cells patch are in memory
+        for (Path jarFile : jarFiles) {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            JarClasses jar = JarClasses.load(jarFile);
+            int parallelism = parallelism(jar);
+            System.out.printf("Loaded %d classes of %s in %d ms, evaluating %d cells at a time%n",
+                              jar.names.size(), jarFile, stopwatch.elapsed(TimeUnit.MILLISECONDS), parallelism);
+
+            List<Cell> jarCells = new ArrayList<>();
+            for (Path patchFile : patchFiles) {
+                jarCells.add(new Cell(jar, jarFile, patchFile, patches.get(patchFile)));
+            }
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                List<ForkJoinTask<?>> tasks = new ArrayList<>();
+                for (Cell cell : jarCells) {
+                    tasks.add(pool.submit(cell::evaluate));
+                }
+                for (ForkJoinTask<?> task : tasks) {
+                    task.join();
+                }
+            } finally {
+                pool.shutdown();
+            }
+            for (Cell cell : jarCells) {
+                cell.jar = null;
+            }
+            cells.addAll(jarCells);
+        }
+        System.out.printf("Evaluated %d cells in %d ms%n", cells.size(), total.elapsed(TimeUnit.MILLISECONDS));
+        return cells;
+    }
+
+    /**
+     * @return how many cells of the given jar fit in the free heap at once, each patching a full tree of the jar.
+     */
+    private static int parallelism(JarClasses jar) {
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        // leave half of the free heap for garbage and patchtools itself
+        long cells = free / 2 / Math.max(1, jar.getTreeSize());
+        return (int) Math.max(1, Math.min(runtime.availableProcessors(), cells));
+    }
+
+    private static void printSummary(List<Path> jars, List<Path> patches, List<Cell> cells) {
+        for (int p = 0; p < patches.size(); p++) {
+            StringBuilder line = new StringBuilder();
+            for (int j = 0; j < jars.size(); j++) {
+                Cell cell = cells.get(j * patches.size() + p);
+                line.append(cell.passed ? "PASS " : "FAIL ");
+            }
+            System.out.println(line.append(patches.get(p)));
+        }
+    }
+
+    private static void writeReport(Writer out, List<Path> jars, List<Path> patches, List<Cell> cells)
+            throws IOException {
+        out.write("{\n  \"jars\": [");
+        writePaths(out, jars);
+        out.write("],\n  \"patches\": [");
+        writePaths(out, patches);
+        out.write("],\n  \"cells\": [");
+        for (int i = 0; i < cells.size(); i++) {
+            Cell cell = cells.get(i);
+            out.write(i == 0 ? "\n" : ",\n");
+            out.write("    {\"jar\": ");
+            writeString(out, cell.jarFile.toString());
+            out.write(", \"patch\": ");
+            writeString(out, cell.patchFile.toString());
+            out.write(", \"passed\": " + cell.passed);
+            out.write(", \"millis\": " + cell.millis);
+            out.write(", \"matched\": [");
+            for (int j = 0; j < cell.matched.size(); j++) {
+                if (j > 0) { out.write(", "); }
+                writeString(out, cell.matched.get(j));
+            }
+            out.write("]");
+            if (cell.error != null) {
+                out.write(", \"error\": ");
+                writeString(out, cell.error);
+            }
+            out.write("}");
+        }
+        out.write("\n  ]\n}\n");
+    }
+
+    private static void writePaths(Writer out, List<Path> paths) throws IOException {
+        for (int i = 0; i < paths.size(); i++) {
+            if (i > 0) { out.write(", "); }
+            writeString(out, paths.get(i).toString());
+        }
+    }
+
+    private static void writeString(Writer out, String s) throws IOException {
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                out.write(String.format("\\u%04x", (int) c));
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+
+    /**
+     * The classes of one jar as immutable snapshots, and the fingerprints of their unpatched trees.
+     */
+    private static class JarClasses {
+        /**
+         * Approximate size of a class tree relative to its class file.
+         */
+        private static final int TREE_SIZE_FACTOR = 4;
+
+        /**
+         * Internal names of all classes, sorted.
+         */
+        private final List<String> names;
+        private final Map<String, ClassSnapshot> classes;
+        private final Map<String, HashCode> fingerprints;
+        private final long size;
+
+        private JarClasses(List<String> names, Map<String, ClassSnapshot> classes,
+                           Map<String, HashCode> fingerprints, long size) {
+            this.names = names;
+            this.classes = classes;
+            this.fingerprints = fingerprints;
+            this.size = size;
+        }
+
+        /**
+         * Read and fingerprint all classes of a jar in parallel.
+         */
+        static JarClasses load(Path jarFile) throws IOException {
+            try (JarIndex index = JarIndex.open(jarFile)) {
+                index.getReady().join();
+                List<String> names = index.getClassNames().stream()
+                        .map(name -> name.replace('.', '/'))
+                        .collect(Collectors.toList());
+                Map<String, ClassSnapshot> classes = new ConcurrentHashMap<>();
+                Map<String, HashCode> fingerprints = new ConcurrentHashMap<>();
+                names.parallelStream().forEach(name -> {
+                    ClassSnapshot snapshot;
+                    try {
+                        snapshot = new ClassSnapshot(index.readClass(name));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    classes.put(name, snapshot);
+                    fingerprints.put(name, TreeFingerprint.of(snapshot.newNode()));
+                });
+                long size = classes.values().stream().mapToLong(ClassSnapshot::getSize).sum();
+                return new JarClasses(names, classes, fingerprints, size);
+            }
+        }
+
+        /**
+         * @return approximate memory taken by a tree of every class of the jar, in bytes.
+         */
+        long getTreeSize() {
+            return size * TREE_SIZE_FACTOR;
+        }
+
+        /**
+         * @return a class set with a fresh tree of every class of the jar.
+         */
+        ClassSet newClassSet() {
+            ClassSet classSet = new ClassSet(new ClassPathWrapper());
+            for (String name : names) {
+                classSet.add(classes.get(name).newNode());
+            }
+            return classSet;
+        }
+    }
+
+    private static class Cell {
+        /**
+         * The classes to patch, released once all cells of the jar ran.
+         */
+        private JarClasses jar;
+        private final Path jarFile;
+        private final Path patchFile;
+        private final String patch;
+
+        private boolean passed;
+        /**
+         * Internal names of the classes the patch changed, as far as a {@link TreeFingerprint} sees. Classes where it
+         * only changed annotations or the class signature are missing.
+         */
+        private final List<String> matched = new ArrayList<>();
+        private String error;
+        private long millis;
+
+        Cell(JarClasses jar, Path jarFile, Path patchFile, String patch) {
+            this.jar = jar;
+            this.jarFile = jarFile;
+            this.patchFile = patchFile;
+            this.patch = patch;
+        }
+
+        void evaluate() {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            try {
+                ClassSet classSet = jar.newClassSet();
+                Patching.apply(classSet, patch);
+                for (String name : jar.names) {
+                    ClassNode node = classSet.getClassWrapper(name).getNode();
+                    if (!TreeFingerprint.of(node).equals(jar.fingerprints.get(name))) {
+                        matched.add(name);
+                    }
+                }
+                passed = true;
+            } catch (Throwable t) {
+                error = t.toString();
+            }
+            millis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package at.yawk.patchtools.editor;
+
+import java.io.StringReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import uk.co.thinkofdeath.patchtools.Patcher;
+import uk.co.thinkofdeath.patchtools.wrappers.ClassPathWrapper;
+import uk.co.thinkofdeath.patchtools.wrappers.ClassSet;
+
+/**
+ * Patch application through patchtools, shared by the editor and the headless tools.
+ *
+ * @author yawkat
+ */
+class Patching {
+    private Patching() {}
+
+    /**
+     * Apply a patch to a copy of the given class.
+     *
+     * @return the patched copy, <code>original</code> is left untouched.
+     */
+    static ClassNode patchClass(ClassNode original, String patch) {
+        // clone class node
+        ClassNode node = new ClassNode(Opcodes.ASM5);
+        original.accept(node);
+
+        ClassSet classSet = newClassSet(node);
+        apply(classSet, patch);
+
+        return classSet.getClassWrapper(node.name).getNode();
+    }
+
+    /**
+     * Create a class set that only contains the given class.
+     */
+    static ClassSet newClassSet(ClassNode node) {
+        ClassSet classSet = new ClassSet(new ClassPathWrapper());
+        classSet.add(node);
+        return classSet;
+    }
+
+    /**
+     * Serialize a class without computing frames or maxs, as used for hashing and decompiling.
+     */
+    static byte[] toBytes(ClassNode node) {
+        ClassWriter writer = new ClassWriter(0);
+        node.accept(writer);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Apply a patch to all classes of the given set.
+     */
+    static void apply(ClassSet classSet, String patch) {
+        Patcher patcher = new Patcher(classSet);
+        patcher.apply(new StringReader(patch));
+    }
+}
@@ -0,0 +1,36 @@
+package at.yawk.patchtools.editor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one run of a {@link PipelineStage}. Only loaded when the JVM has JFR, but compiling it
+ * needs a JDK with the <code>jdk.jfr</code> API, that is 8u262 or 11 and later.
+ *
+ * @author yawkat
+ */
+@Name("at.yawk.patchtools.editor.PipelineStage")
+@Label("Pipeline Stage")
+@Category("Patchtools Editor")
+@Description("One run of a stage of the patch evaluation pipeline")
+class PipelineEvent extends Event {
+    @Label("Stage")
+    String stage;
+    @Label("Subject")
+    String subject;
+
+    static Object begin(String stage, String subject) {
+        PipelineEvent event = new PipelineEvent();
+        event.stage = stage;
+        event.subject = subject;
+        event.begin();
+        return event;
+    }
+
+    static void commit(Object event) {
+        ((PipelineEvent) event).commit();
+    }
+}
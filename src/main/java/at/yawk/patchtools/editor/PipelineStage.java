@@ -0,0 +1,76 @@
+package at.yawk.patchtools.editor;
+
+/**
+ * Timed stages of the patch pipeline. Each stage keeps a rolling histogram of its recent durations and, when the JVM
+ * supports it, emits a {@link PipelineEvent} to Flight Recorder for every run.
+ *
+ * @author yawkat
+ */
+enum PipelineStage {
+    PATCH("patch"),
+    WRITE("write"),
+    MARKUP("markup"),
+    DECOMPILE("decompile"),
+    HIGHLIGHT("highlight"),
+    APPLY("apply");
+
+    private static final boolean JFR_AVAILABLE = isJfrAvailable();
+
+    private final String label;
+    private final RollingHistogram histogram = new RollingHistogram(256);
+
+    PipelineStage(String label) {
+        this.label = label;
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, PipelineStage.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    String getLabel() {
+        return label;
+    }
+
+    RollingHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Start timing a run of this stage.
+     *
+     * @param subject what this stage is working on, such as the class name.
+     */
+    Timer start(String subject) {
+        return new Timer(this, subject);
+    }
+
+    /**
+     * Running timer, stops on {@link #close()}.
+     */
+    static class Timer implements AutoCloseable {
+        private final PipelineStage stage;
+        private final long start = System.nanoTime();
+        /**
+         * The {@link PipelineEvent}, typed as Object so this class links without JFR.
+         */
+        private final Object event;
+
+        private Timer(PipelineStage stage, String subject) {
+            this.stage = stage;
+            this.event = JFR_AVAILABLE ? PipelineEvent.begin(stage.label, subject) : null;
+        }
+
+        @Override
+        public void close() {
+            stage.histogram.record(System.nanoTime() - start);
+            if (event != null) {
+                PipelineEvent.commit(event);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package at.yawk.patchtools.editor;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durations of the last few runs of something, for percentiles over recent behaviour.
+ *
+ * @author yawkat
+ */
+class RollingHistogram {
+    private final long[] samples;
+    private int next;
+    private int size;
+
+    RollingHistogram(int capacity) {
+        samples = new long[capacity];
+    }
+
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        if (size < samples.length) { size++; }
+    }
+
+    synchronized int getCount() {
+        return size;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the given percentile of the recorded durations in milliseconds, or -1 if nothing was recorded yet.
+     */
+    long getPercentileMillis(int percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (size == 0) { return -1; }
+            sorted = Arrays.copyOf(samples, size);
+        }
+        Arrays.sort(sorted);
+        int index = Math.min(sorted.length - 1, sorted.length * percentile / 100);
+        return TimeUnit.NANOSECONDS.toMillis(sorted[index]);
+    }
+}
@@ -0,0 +1,184 @@
+package at.yawk.patchtools.editor;
+
+import dk.brics.automaton.Automaton;
+import dk.brics.automaton.RegExp;
+import dk.brics.automaton.RunAutomaton;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Deterministic automaton for the union of several regular expressions. Every state is tagged with the index of the
+ * first expression it accepts, so a single run finds the longest token and which expression produced it.
+ *
+ * brics has no tagged union, so each expression is compiled with a private-use marker character appended, and a state
+ * accepts expression <code>i</code> iff stepping over marker <code>i</code> leads to an accepting state. The marker
+ * range is then folded into one dead character class.
+ *
+ * @author yawkat
+ */
+class TokenDfa {
+    private static final int MAGIC = 0x70746564;
+
+    private static final char MARKER_BASE = '\uE000';
+    private static final int MAX_EXPRESSIONS = '\uF8FF' - MARKER_BASE;
+
+    private final int initial;
+    /**
+     * Sorted start points of the character classes, <code>points[0] == 0</code>.
+     */
+    private final char[] points;
+    /**
+     * Character class of each ASCII character.
+     */
+    private final int[] asciiClasses = new int[128];
+    /**
+     * <code>transitions[state * points.length + class]</code> is the next state or <code>-1</code>.
+     */
+    private final int[] transitions;
+    /**
+     * Index of the first expression accepted in a state, or <code>-1</code>.
+     */
+    private final int[] tags;
+
+    private TokenDfa(int initial, char[] points, int[] transitions, int[] tags) {
+        this.initial = initial;
+        this.points = points;
+        this.transitions = transitions;
+        this.tags = tags;
+        for (char c = 0; c < asciiClasses.length; c++) {
+            asciiClasses[c] = classOf(c);
+        }
+    }
+
+    static TokenDfa compile(List<String> expressions) {
+        if (expressions.size() > MAX_EXPRESSIONS) {
+            throw new IllegalArgumentException("Too many expressions: " + expressions.size());
+        }
+        char markerEnd = (char) (MARKER_BASE + expressions.size());
+
+        List<Automaton> tagged = new ArrayList<>(expressions.size());
+        for (int i = 0; i < expressions.size(); i++) {
+            Automaton automaton = new RegExp(expressions.get(i)).toAutomaton();
+            tagged.add(automaton.concatenate(Automaton.makeChar((char) (MARKER_BASE + i))));
+        }
+        Automaton union = Automaton.union(tagged);
+        union.minimize();
+        RunAutomaton run = new RunAutomaton(union, false);
+
+        int states = run.getSize();
+        int[] tags = new int[states];
+        for (int state = 0; state < states; state++) {
+            tags[state] = -1;
+            for (int i = 0; i < expressions.size(); i++) {
+                int next = run.step(state, (char) (MARKER_BASE + i));
+                if (next != -1 && run.isAccept(next)) {
+                    tags[state] = i;
+                    break;
+                }
+            }
+        }
+
+        // keep every class boundary outside the marker range and collapse the markers into one class
+        StringBuilder pointBuilder = new StringBuilder();
+        pointBuilder.append('\0');
+        for (char point : run.getCharIntervals()) {
+            if (point != 0 && (point < MARKER_BASE || point > markerEnd)) {
+                pointBuilder.append(point);
+            }
+        }
+        pointBuilder.append(MARKER_BASE).append(markerEnd);
+        char[] points = pointBuilder.toString().toCharArray();
+        Arrays.sort(points);
+
+        int[] transitions = new int[states * points.length];
+        for (int state = 0; state < states; state++) {
+            for (int c = 0; c < points.length; c++) {
+                transitions[state * points.length + c] =
+                        points[c] == MARKER_BASE ? -1 : run.step(state, points[c]);
+            }
+        }
+        return new TokenDfa(run.getInitialState(), points, transitions, tags);
+    }
+
+    /**
+     * Write this automaton in a compact table format, together with a fingerprint of the expressions it was compiled
+     * from.
+     */
+    void write(OutputStream out, String fingerprint) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(gzip));
+        data.writeInt(MAGIC);
+        data.writeUTF(fingerprint);
+        data.writeInt(initial);
+        data.writeInt(points.length);
+        for (char point : points) {
+            data.writeChar(point);
+        }
+        data.writeInt(tags.length);
+        for (int tag : tags) {
+            data.writeInt(tag);
+        }
+        for (int transition : transitions) {
+            data.writeInt(transition);
+        }
+        data.flush();
+        gzip.finish();
+    }
+
+    /**
+     * Read an automaton written by {@link #write(OutputStream, String)}.
+     *
+     * @return the automaton, or <code>null</code> if it was compiled from expressions with a different fingerprint.
+     */
+    static TokenDfa read(InputStream in, String fingerprint) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a token automaton");
+        }
+        if (!data.readUTF().equals(fingerprint)) {
+            return null;
+        }
+        int initial = data.readInt();
+        char[] points = new char[data.readInt()];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = data.readChar();
+        }
+        int[] tags = new int[data.readInt()];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = data.readInt();
+        }
+        int[] transitions = new int[tags.length * points.length];
+        for (int i = 0; i < transitions.length; i++) {
+            transitions[i] = data.readInt();
+        }
+        return new TokenDfa(initial, points, transitions, tags);
+    }
+
+    private int classOf(char c) {
+        int i = Arrays.binarySearch(points, c);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    int getInitialState() {
+        return initial;
+    }
+
+    /**
+     * @return the next state or <code>-1</code> if no token continues with this character.
+     */
+    int step(int state, char c) {
+        int charClass = c < asciiClasses.length ? asciiClasses[c] : classOf(c);
+        return transitions[state * points.length + charClass];
+    }
+
+    /**
+     * @return the index of the first expression accepted in the given state or <code>-1</code>.
+     */
+    int getTag(int state) {
+        return tags[state];
+    }
+}
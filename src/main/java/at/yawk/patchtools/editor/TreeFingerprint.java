@@ -0,0 +1,147 @@
+package at.yawk.patchtools.editor;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.util.List;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.tree.*;
+
+/**
+ * Content hash of a class tree, computed by walking it instead of serializing it. Covers what patches usually change:
+ * class header, fields, and each method's header, instructions with their operands and try-catch blocks. Debug
+ * information, attributes, annotations and the generic signature of the class are left out, so a change to only
+ * those does not change the fingerprint.
+ *
+ * @author yawkat
+ */
+class TreeFingerprint {
+    private TreeFingerprint() {}
+
+    static HashCode of(ClassNode node) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putInt(node.access);
+        putString(hasher, node.name);
+        putString(hasher, node.superName);
+        putStrings(hasher, node.interfaces);
+        hasher.putInt(node.fields.size());
+        for (FieldNode field : node.fields) {
+            hasher.putInt(field.access);
+            putString(hasher, field.name);
+            putString(hasher, field.desc);
+            putString(hasher, field.signature);
+            putString(hasher, field.value == null ? null : field.value.getClass().getName() + ":" + field.value);
+        }
+        hasher.putInt(node.methods.size());
+        for (MethodNode method : node.methods) {
+            putMethod(hasher, method);
+        }
+        return hasher.hash();
+    }
+
+    private static void putMethod(Hasher hasher, MethodNode method) {
+        hasher.putInt(method.access);
+        putString(hasher, method.name);
+        putString(hasher, method.desc);
+        putString(hasher, method.signature);
+        putStrings(hasher, method.exceptions);
+
+        InsnList instructions = method.instructions;
+        hasher.putInt(instructions.size());
+        for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            hasher.putInt(insn.getType()).putInt(insn.getOpcode());
+            if (insn instanceof FieldInsnNode) {
+                FieldInsnNode field = (FieldInsnNode) insn;
+                putString(hasher, field.owner);
+                putString(hasher, field.name);
+                putString(hasher, field.desc);
+            } else if (insn instanceof MethodInsnNode) {
+                MethodInsnNode call = (MethodInsnNode) insn;
+                putString(hasher, call.owner);
+                putString(hasher, call.name);
+                putString(hasher, call.desc);
+                hasher.putBoolean(call.itf);
+            } else if (insn instanceof InvokeDynamicInsnNode) {
+                InvokeDynamicInsnNode call = (InvokeDynamicInsnNode) insn;
+                putString(hasher, call.name);
+                putString(hasher, call.desc);
+                putConstant(hasher, call.bsm);
+                for (Object arg : call.bsmArgs) {
+                    putConstant(hasher, arg);
+                }
+            } else if (insn instanceof TypeInsnNode) {
+                putString(hasher, ((TypeInsnNode) insn).desc);
+            } else if (insn instanceof IntInsnNode) {
+                hasher.putInt(((IntInsnNode) insn).operand);
+            } else if (insn instanceof VarInsnNode) {
+                hasher.putInt(((VarInsnNode) insn).var);
+            } else if (insn instanceof IincInsnNode) {
+                hasher.putInt(((IincInsnNode) insn).var).putInt(((IincInsnNode) insn).incr);
+            } else if (insn instanceof LdcInsnNode) {
+                putConstant(hasher, ((LdcInsnNode) insn).cst);
+            } else if (insn instanceof JumpInsnNode) {
+                hasher.putInt(instructions.indexOf(((JumpInsnNode) insn).label));
+            } else if (insn instanceof TableSwitchInsnNode) {
+                TableSwitchInsnNode table = (TableSwitchInsnNode) insn;
+                hasher.putInt(table.min).putInt(table.max).putInt(instructions.indexOf(table.dflt));
+                putLabels(hasher, instructions, table.labels);
+            } else if (insn instanceof LookupSwitchInsnNode) {
+                LookupSwitchInsnNode lookup = (LookupSwitchInsnNode) insn;
+                hasher.putInt(instructions.indexOf(lookup.dflt));
+                for (Integer key : lookup.keys) {
+                    hasher.putInt(key);
+                }
+                putLabels(hasher, instructions, lookup.labels);
+            } else if (insn instanceof MultiANewArrayInsnNode) {
+                putString(hasher, ((MultiANewArrayInsnNode) insn).desc);
+                hasher.putInt(((MultiANewArrayInsnNode) insn).dims);
+            }
+        }
+
+        hasher.putInt(method.tryCatchBlocks.size());
+        for (TryCatchBlockNode block : method.tryCatchBlocks) {
+            hasher.putInt(instructions.indexOf(block.start))
+                    .putInt(instructions.indexOf(block.end))
+                    .putInt(instructions.indexOf(block.handler));
+            putString(hasher, block.type);
+        }
+    }
+
+    private static void putLabels(Hasher hasher, InsnList instructions, List<LabelNode> labels) {
+        hasher.putInt(labels.size());
+        for (LabelNode label : labels) {
+            hasher.putInt(instructions.indexOf(label));
+        }
+    }
+
+    private static void putConstant(Hasher hasher, Object constant) {
+        if (constant instanceof Handle) {
+            Handle handle = (Handle) constant;
+            hasher.putInt(handle.getTag());
+            putString(hasher, handle.getOwner());
+            putString(hasher, handle.getName());
+            putString(hasher, handle.getDesc());
+        } else {
+            // the type distinguishes e.g. int 1 from long 1
+            putString(hasher, constant.getClass().getName());
+            putString(hasher, constant.toString());
+        }
+    }
+
+    private static void putStrings(Hasher hasher, List<String> strings) {
+        hasher.putInt(strings == null ? -1 : strings.size());
+        if (strings != null) {
+            for (String s : strings) {
+                putString(hasher, s);
+            }
+        }
+    }
+
+    private static void putString(Hasher hasher, String s) {
+        if (s == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(s.length()).putUnencodedChars(s);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package at.yawk.patchtools.editor;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * Runs a few patch and render cycles on {@link TestClass} in the background, so class loading and the first JIT
+ * compilations of patchtools, ASM, Procyon and the highlighters are done before the user's first edit.
+ *
+ * @author yawkat
+ */
+class Warmup {
+    private static final int ROUNDS = 5;
+
+    private Warmup() {}
+
+    /**
+     * Start the warm-up on a low priority daemon thread.
+     */
+    static void start() {
+        Thread thread = new DaemonThreadFactory().newThread(() -> {
+            try {
+                run();
+            } catch (Throwable t) {
+                // only costs us the warm-up
+                t.printStackTrace();
+            }
+        });
+        thread.setName("Warm-up");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    private static void run() throws IOException {
+        byte[] classBytes = readResource("TestClass.class");
+        String patch = new String(readResource("warmup.patch"), StandardCharsets.UTF_8);
+        ClassNode original = new ClassNode(Opcodes.ASM5);
+        new ClassReader(classBytes).accept(original, 0);
+
+        // small budget: the cached output is useless to the editor, we only want the code paths to run
+        CodeRenderer renderer = new CodeRenderer(1 << 20);
+        for (int i = 0; i < ROUNDS; i++) {
+            ClassNode patched = Patching.patchClass(original, patch);
+            String byteCode = renderer.markup(patched);
+            String javaCode = renderer.decompile(Patching.toBytes(patched), EvaluationScheduler.Cancellation.NEVER);
+            KeywordHighlighter.PATCH.findAndSortHighlights(patch);
+            KeywordHighlighter.PATCH.findAndSortHighlights(byteCode);
+            KeywordHighlighter.JAVA.findAndSortHighlights(javaCode);
+        }
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        try (InputStream in = Warmup.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Missing resource " + name);
+            }
+            return ByteStreams.toByteArray(in);
+        }
+    }
+}
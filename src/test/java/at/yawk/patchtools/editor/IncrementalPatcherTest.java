@@ -0,0 +1,73 @@
+package at.yawk.patchtools.editor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author yawkat
+ */
+public class IncrementalPatcherTest {
+    private static final String PATCH = "class Test {\n" +
+                                        "    int a;\n" +
+                                        "\n" +
+                                        "    # comment\n" +
+                                        "    void b() {\n" +
+                                        "        .ldc \"{\"\n" +
+                                        "        .return\n" +
+                                        "    }\n" +
+                                        "}\n";
+
+    @Test
+    public void testBlocks() {
+        IncrementalPatcher.Blocks blocks = IncrementalPatcher.Blocks.parse(PATCH);
+        assertNotNull(blocks);
+        assertEquals("class Test {\n" +
+                     "    int a;\n" +
+                     "\n" +
+                     "    # comment\n" +
+                     "\n\n\n\n" +
+                     "}\n", blocks.text(0, 1));
+        assertEquals("class Test {\n" +
+                     "\n" +
+                     "\n" +
+                     "    # comment\n" +
+                     "    void b() {\n" +
+                     "        .ldc \"{\"\n" +
+                     "        .return\n" +
+                     "    }\n" +
+                     "}\n", blocks.text(1, 2));
+    }
+
+    @Test
+    public void testUnbalancedBraces() {
+        assertNull(IncrementalPatcher.Blocks.parse("class Test {\n    void a() {\n}\n"));
+        assertNull(IncrementalPatcher.Blocks.parse("class Test {\n    void a() {\n    }\n"));
+        assertNull(IncrementalPatcher.Blocks.parse("class Test {\n    }\n    }\n}\n"));
+        assertNull(IncrementalPatcher.Blocks.parse("class Test {\n    int a;\n}\n}\n"));
+    }
+
+    @Test
+    public void testBracesInComments() {
+        assertNotNull(IncrementalPatcher.Blocks.parse("class Test {\n    int a; // {\n}\n"));
+        assertNotNull(IncrementalPatcher.Blocks.parse("class Test {\n    # }\n    int a;\n}\n"));
+        // block comments are not tracked
+        assertNull(IncrementalPatcher.Blocks.parse("class Test {\n    /* } */\n    int a;\n}\n"));
+    }
+
+    @Test
+    public void testSeveralClasses() {
+        assertNull(IncrementalPatcher.Blocks.parse("class A {\n}\nclass B {\n}\n"));
+    }
+
+    @Test
+    public void testWildcards() {
+        assertNotNull(IncrementalPatcher.Blocks.parse("class Test {\n    int ~a;\n    int ~b;\n}\n"));
+        // patchtools binds these across the whole patch
+        assertNull(IncrementalPatcher.Blocks.parse(
+                "class Test {\n    int ~a;\n    void b() {\n        .getfield Test ~a I\n    }\n}\n"));
+        assertNull(IncrementalPatcher.Blocks.parse("class ~Test {\n    int a;\n}\n"));
+    }
+}
@@ -0,0 +1,121 @@
+package at.yawk.patchtools.editor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author yawkat
+ */
+public class LineDiffTest {
+    @Test
+    public void testEqual() {
+        assertTrue(LineDiff.diff(lines("a", "b"), lines("a", "b")).isEmpty());
+        assertTrue(LineDiff.diff(lines(), lines()).isEmpty());
+    }
+
+    @Test
+    public void testFromEmpty() {
+        List<LineDiff.Hunk> hunks = check(lines(), lines("a", "b"));
+        assertEquals(1, hunks.size());
+        assertHunk(hunks.get(0), 0, 0, 0, 2);
+    }
+
+    @Test
+    public void testToEmpty() {
+        List<LineDiff.Hunk> hunks = check(lines("a", "b"), lines());
+        assertEquals(1, hunks.size());
+        assertHunk(hunks.get(0), 0, 2, 0, 0);
+    }
+
+    @Test
+    public void testLastLineChanged() {
+        List<LineDiff.Hunk> hunks = check(lines("a", "b", "c"), lines("a", "b", "d"));
+        assertEquals(1, hunks.size());
+        assertHunk(hunks.get(0), 2, 3, 2, 3);
+    }
+
+    @Test
+    public void testLastLineAppended() {
+        List<LineDiff.Hunk> hunks = check(lines("a", "b"), lines("a", "b", "c"));
+        assertEquals(1, hunks.size());
+        assertHunk(hunks.get(0), 2, 2, 2, 3);
+    }
+
+    @Test
+    public void testLastLineRemoved() {
+        List<LineDiff.Hunk> hunks = check(lines("a", "b", "c"), lines("a", "b"));
+        assertEquals(1, hunks.size());
+        assertHunk(hunks.get(0), 2, 3, 2, 2);
+    }
+
+    @Test
+    public void testSeparateHunks() {
+        List<LineDiff.Hunk> hunks = check(lines("a", "b", "c", "d", "e"), lines("a", "x", "c", "d", "y", "e"));
+        assertEquals(2, hunks.size());
+        assertHunk(hunks.get(0), 1, 2, 1, 2);
+        assertHunk(hunks.get(1), 4, 4, 4, 5);
+    }
+
+    @Test
+    public void testManyEdits() {
+        // 200 replaced lines are 400 edits, still within the search limit
+        List<String> from = new ArrayList<>();
+        List<String> to = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            from.add("line " + i);
+            to.add(i % 2 == 0 ? "line " + i : "changed " + i);
+        }
+        assertEquals(200, check(from, to).size());
+    }
+
+    @Test
+    public void testTooManyEdits() {
+        List<String> from = new ArrayList<>();
+        List<String> to = new ArrayList<>();
+        from.add("same");
+        to.add("same");
+        for (int i = 0; i < 600; i++) {
+            from.add("old " + i);
+            to.add("new " + i);
+        }
+        from.add("same");
+        to.add("same");
+        List<LineDiff.Hunk> hunks = check(from, to);
+        assertEquals(1, hunks.size());
+        assertHunk(hunks.get(0), 1, 601, 1, 601);
+    }
+
+    private static List<String> lines(String... lines) {
+        return Arrays.asList(lines);
+    }
+
+    /**
+     * Diff the given texts and check that applying the hunks to <code>from</code> gives <code>to</code>.
+     */
+    private static List<LineDiff.Hunk> check(List<String> from, List<String> to) {
+        List<LineDiff.Hunk> hunks = LineDiff.diff(from, to);
+        List<String> applied = new ArrayList<>(from);
+        List<LineDiff.Hunk> reversed = new ArrayList<>(hunks);
+        Collections.reverse(reversed);
+        for (LineDiff.Hunk hunk : reversed) {
+            List<String> range = applied.subList(hunk.fromStart, hunk.fromEnd);
+            range.clear();
+            range.addAll(to.subList(hunk.toStart, hunk.toEnd));
+        }
+        assertEquals(to, applied);
+        return hunks;
+    }
+
+    private static void assertHunk(LineDiff.Hunk hunk, int fromStart, int fromEnd, int toStart, int toEnd) {
+        assertEquals(fromStart, hunk.fromStart);
+        assertEquals(fromEnd, hunk.fromEnd);
+        assertEquals(toStart, hunk.toStart);
+        assertEquals(toEnd, hunk.toEnd);
+    }
+}
@@ -0,0 +1,81 @@
+package at.yawk.patchtools.editor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author yawkat
+ */
+public class TokenDfaTest {
+    @Test
+    public void testLongestMatch() {
+        TokenDfa dfa = TokenDfa.compile(Arrays.asList("int", "interface"));
+        assertArrayEquals(new int[]{ 9, 1 }, match(dfa, "interface X"));
+        assertArrayEquals(new int[]{ 3, 0 }, match(dfa, "int x"));
+        // "inter" is no token, so we fall back to the longest one before it
+        assertArrayEquals(new int[]{ 3, 0 }, match(dfa, "inter"));
+    }
+
+    @Test
+    public void testFirstExpressionWinsTie() {
+        TokenDfa dfa = TokenDfa.compile(Arrays.asList("if", "[a-z]+"));
+        assertArrayEquals(new int[]{ 2, 0 }, match(dfa, "if("));
+        assertArrayEquals(new int[]{ 4, 1 }, match(dfa, "iffy"));
+
+        TokenDfa reversed = TokenDfa.compile(Arrays.asList("[a-z]+", "if"));
+        assertArrayEquals(new int[]{ 2, 0 }, match(reversed, "if("));
+    }
+
+    @Test
+    public void testNoMatch() {
+        TokenDfa dfa = TokenDfa.compile(Arrays.asList("int", "[0-9]+"));
+        assertNull(match(dfa, "x"));
+        assertNull(match(dfa, "in"));
+        assertNull(match(dfa, ""));
+    }
+
+    @Test
+    public void testNonAscii() {
+        TokenDfa dfa = TokenDfa.compile(Arrays.asList("\u00e4+", "[a-z\u4e00-\u9fff]+"));
+        assertArrayEquals(new int[]{ 2, 0 }, match(dfa, "\u00e4\u00e4b"));
+        assertArrayEquals(new int[]{ 3, 1 }, match(dfa, "a\u4e2d\u6587 "));
+        // characters of the private use area are used as tag markers internally
+        assertNull(match(dfa, "\ue000"));
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        TokenDfa dfa = TokenDfa.compile(Arrays.asList("int", "interface", "[a-z]+"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dfa.write(out, "fingerprint");
+
+        TokenDfa read = TokenDfa.read(new ByteArrayInputStream(out.toByteArray()), "fingerprint");
+        for (String text : Arrays.asList("interface", "inter", "int", "x", "1")) {
+            assertArrayEquals(match(dfa, text), match(read, text));
+        }
+        assertNull(TokenDfa.read(new ByteArrayInputStream(out.toByteArray()), "other"));
+    }
+
+    /**
+     * @return end and tag of the longest token at the start of <code>text</code>, or <code>null</code> if there is
+     * none.
+     */
+    private static int[] match(TokenDfa dfa, String text) {
+        int[] best = null;
+        int state = dfa.getInitialState();
+        for (int i = 0; i < text.length(); i++) {
+            state = dfa.step(state, text.charAt(i));
+            if (state == -1) { break; }
+            if (dfa.getTag(state) != -1) {
+                best = new int[]{ i + 1, dfa.getTag(state) };
+            }
+        }
+        return best;
+    }
+}